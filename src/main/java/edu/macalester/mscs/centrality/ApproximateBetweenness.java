@@ -0,0 +1,244 @@
+package edu.macalester.mscs.centrality;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Approximate node betweenness by shortest path sampling, following Riondato and Kornaropoulos,
+ * for networks where the exact Brandes algorithm is too slow.
+ *
+ * Each sample picks a random pair of vertices, finds the shortest paths between them, and picks
+ * one of those paths uniformly at random, crediting the vertices inside it. The number of samples
+ * depends only on the error, the confidence and the vertex diameter of the network, not on its size.
+ * With probability at least 1 - delta, every estimate is within epsilon of the true betweenness,
+ * where both are measured as a fraction of the pairs. The results are scaled back to the pair counts
+ * that Betweenness and Gephi report, and so is the error bound.
+ *
+ * The samples are split into fixed chunks, each with its own random generator seeded from the seed,
+ * which are run in parallel, so that the result only depends on the seed.
+ */
+public class ApproximateBetweenness {
+
+    public static final double DEFAULT_EPSILON = 0.01;
+    public static final double DEFAULT_DELTA = 0.1;
+    public static final long DEFAULT_SEED = 42;
+
+    // universal constant from the VC-dimension bound
+    private static final double C = 0.5;
+    private static final int SAMPLES_PER_TASK = 256;
+
+    private final CsrGraph graph;
+    private final boolean weighted;
+    private final double epsilon;
+    private final double delta;
+    private final long seed;
+
+    private int sampleCount = 0;
+    private double[] fractions = null;
+
+    public ApproximateBetweenness(CsrGraph graph, boolean weighted) {
+        this(graph, weighted, DEFAULT_EPSILON, DEFAULT_DELTA, DEFAULT_SEED);
+    }
+
+    /**
+     * @param graph
+     * @param weighted whether to use inverse weights as distances
+     * @param epsilon the maximum error, as a fraction of the pairs
+     * @param delta the probability that some estimate exceeds the maximum error
+     * @param seed
+     */
+    public ApproximateBetweenness(CsrGraph graph, boolean weighted, double epsilon, double delta, long seed) {
+        if (epsilon <= 0 || epsilon >= 1) {
+            throw new IllegalArgumentException("Invalid epsilon: " + epsilon);
+        }
+        if (delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("Invalid delta: " + delta);
+        }
+        this.graph = graph;
+        this.weighted = weighted;
+        this.epsilon = epsilon;
+        this.delta = delta;
+        this.seed = seed;
+    }
+
+    /**
+     * Draws the samples, if they have not been drawn already
+     * @return this
+     */
+    public synchronized ApproximateBetweenness compute() {
+        if (fractions == null) {
+            int n = graph.size();
+            sampleCount = n < 2 ? 0 : getSampleCount(epsilon, delta, estimateVertexDiameter());
+            List<SampleTask> tasks = new ArrayList<>();
+            for (int from = 0; from < sampleCount; from += SAMPLES_PER_TASK) {
+                tasks.add(new SampleTask(tasks.size(), Math.min(SAMPLES_PER_TASK, sampleCount - from)));
+            }
+            long[] counts = new long[n];
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            for (SampleTask task : tasks) {
+                pool.execute(task);
+            }
+            for (SampleTask task : tasks) {
+                long[] partial = task.join();
+                for (int v = 0; v < n; v++) {
+                    counts[v] += partial[v];
+                }
+            }
+            fractions = new double[n];
+            for (int v = 0; v < n && sampleCount > 0; v++) {
+                fractions[v] = (double) counts[v] / sampleCount;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of samples needed for the given error and confidence, on a network
+     * whose shortest paths have at most vertexDiameter vertices
+     * @param epsilon
+     * @param delta
+     * @param vertexDiameter
+     * @return
+     */
+    public static int getSampleCount(double epsilon, double delta, int vertexDiameter) {
+        int log = vertexDiameter > 2 ? 31 - Integer.numberOfLeadingZeros(vertexDiameter - 2) : -1;
+        return (int) Math.ceil(C / (epsilon * epsilon) * (log + 1 + Math.log(1 / delta)));
+    }
+
+    /**
+     * Returns the estimated betweenness of each vertex, on the same scale as Betweenness
+     * @return
+     */
+    public double[] getNodeBetweenness() {
+        compute();
+        double scale = getScale();
+        double[] betweenness = new double[fractions.length];
+        for (int v = 0; v < fractions.length; v++) {
+            betweenness[v] = fractions[v] * scale;
+        }
+        return betweenness;
+    }
+
+    /**
+     * Returns the error bound that holds for every vertex at once, with probability at least 1 - delta,
+     * on the same scale as the estimates
+     * @return
+     */
+    public double getErrorBound() {
+        return epsilon * getScale();
+    }
+
+    /**
+     * Returns the standard error of each estimate, on the same scale as the estimates.
+     * These are usually much smaller than the error bound, but hold for each vertex separately.
+     * @return
+     */
+    public double[] getStandardErrors() {
+        compute();
+        double scale = getScale();
+        double[] errors = new double[fractions.length];
+        for (int v = 0; v < fractions.length && sampleCount > 0; v++) {
+            errors[v] = Math.sqrt(fractions[v] * (1 - fractions[v]) / sampleCount) * scale;
+        }
+        return errors;
+    }
+
+    public int getSampleCount() {
+        compute();
+        return sampleCount;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    /**
+     * The number of unordered pairs, which converts a fraction of the pairs into a pair count
+     * @return
+     */
+    private double getScale() {
+        double n = graph.size();
+        return n * (n - 1) / 2;
+    }
+
+    /**
+     * Returns an upper bound on the number of vertices in a shortest path.
+     * Without weights, a breadth-first search from any vertex of a component bounds the diameter
+     * of that component by twice its eccentricity. With weights, a shortest path can have as many
+     * vertices as its component, and since only the logarithm matters, that bound is good enough.
+     * @return
+     */
+    private int estimateVertexDiameter() {
+        ShortestPaths paths = new ShortestPaths(graph, false);
+        boolean[] seen = new boolean[graph.size()];
+        int bound = 1;
+        for (int v = 0; v < graph.size(); v++) {
+            if (!seen[v]) {
+                paths.run(v);
+                for (int i = 0; i < paths.reached; i++) {
+                    seen[paths.order[i]] = true;
+                }
+                int eccentricity = (int) paths.distance[paths.order[paths.reached - 1]];
+                bound = Math.max(bound, weighted ? paths.reached : Math.min(paths.reached, 2 * eccentricity + 1));
+            }
+        }
+        return bound;
+    }
+
+    private class SampleTask extends RecursiveTask<long[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final int samples;
+
+        SampleTask(int index, int samples) {
+            this.index = index;
+            this.samples = samples;
+        }
+
+        @Override
+        protected long[] compute() {
+            int n = graph.size();
+            int[] offsets = graph.getOffsets();
+            Random random = new Random(seed + 31L * index);
+            ShortestPaths paths = new ShortestPaths(graph, weighted);
+            long[] counts = new long[n];
+            for (int s = 0; s < samples; s++) {
+                int u = random.nextInt(n);
+                int v = random.nextInt(n - 1);
+                if (v >= u) {
+                    v++;
+                }
+                paths.run(u);
+                if (paths.distance[v] == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                // walk back from v, picking each predecessor in proportion to its number of paths
+                int w = v;
+                while (w != u) {
+                    double target = random.nextDouble() * paths.sigma[w];
+                    int end = offsets[w] + paths.predCount[w];
+                    int p = offsets[w];
+                    double sum = paths.sigma[paths.predVertex[p]];
+                    while (sum <= target && p + 1 < end) {
+                        p++;
+                        sum += paths.sigma[paths.predVertex[p]];
+                    }
+                    w = paths.predVertex[p];
+                    if (w != u) {
+                        counts[w]++;
+                    }
+                }
+            }
+            return counts;
+        }
+    }
+}
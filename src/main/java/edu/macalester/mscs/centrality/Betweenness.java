@@ -0,0 +1,180 @@
+package edu.macalester.mscs.centrality;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Node and edge betweenness centrality by Brandes' algorithm, over a CsrGraph.
+ *
+ * The sources are split into ranges that are processed in parallel on a ForkJoinPool.
+ * Each range has its own shortest path workspace and its own node and edge accumulators,
+ * so there is no sharing between threads, and the partial sums are added together as the
+ * ranges are joined. Distances are either hop counts, as Gephi uses, or the inverse
+ * co-occurrence weights, so that frequent co-occurrence makes two characters closer.
+ *
+ * Since the network is undirected, every pair is counted once, which matches Gephi.
+ */
+public class Betweenness {
+
+    // sources per task, small enough to balance the load and large enough to amortize the workspace
+    private static final int SOURCES_PER_TASK = 16;
+
+    private final CsrGraph graph;
+    private final boolean weighted;
+
+    private double[] nodeBetweenness = null;
+    private double[] edgeBetweenness = null;
+
+    public Betweenness(CsrGraph graph, boolean weighted) {
+        this.graph = graph;
+        this.weighted = weighted;
+    }
+
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    public boolean isWeighted() {
+        return weighted;
+    }
+
+    /**
+     * Computes node and edge betweenness, if they have not been computed already
+     * @return this
+     */
+    public synchronized Betweenness compute() {
+        if (nodeBetweenness == null) {
+            // a graph that fits in one task, like most components left by edge removal, runs on this thread
+            SourceTask task = new SourceTask(0, graph.size());
+            double[][] sums = graph.size() <= SOURCES_PER_TASK ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+            nodeBetweenness = sums[0];
+            edgeBetweenness = sums[1];
+            for (int v = 0; v < nodeBetweenness.length; v++) {
+                nodeBetweenness[v] /= 2;
+            }
+            symmetrize(graph, edgeBetweenness);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the betweenness of each vertex
+     * @return
+     */
+    public double[] getNodeBetweenness() {
+        compute();
+        return nodeBetweenness;
+    }
+
+    /**
+     * Returns the betweenness of each edge, indexed like CsrGraph.getNeighbors(),
+     * so both directions of an edge have the same value
+     * @return
+     */
+    public double[] getEdgeBetweenness() {
+        compute();
+        return edgeBetweenness;
+    }
+
+    /**
+     * Returns the betweenness of the edge between u and v, or 0 if there is no such edge
+     * @param u
+     * @param v
+     * @return
+     */
+    public double getEdgeBetweenness(int u, int v) {
+        int slot = graph.slot(u, v);
+        return slot < 0 ? 0 : getEdgeBetweenness()[slot];
+    }
+
+    /**
+     * Adds the dependencies of every vertex on the given source to the accumulators,
+     * following the shortest paths that have just been found from it
+     * @param paths shortest paths from a single source
+     * @param delta workspace with an entry per vertex, which must be all zero
+     * @param node node accumulator
+     * @param edge edge accumulator, indexed by slot
+     * @param scale multiplier for the dependencies
+     */
+    static void accumulate(ShortestPaths paths, double[] delta, double[] node, double[] edge, double scale) {
+        int[] offsets = paths.getGraph().getOffsets();
+        for (int i = paths.reached - 1; i > 0; i--) {
+            int w = paths.order[i];
+            double coefficient = (1 + delta[w]) / paths.sigma[w];
+            for (int p = offsets[w]; p < offsets[w] + paths.predCount[w]; p++) {
+                int v = paths.predVertex[p];
+                double c = paths.sigma[v] * coefficient;
+                delta[v] += c;
+                if (edge != null) {
+                    edge[paths.predSlot[p]] += scale * c;
+                }
+            }
+            if (node != null) {
+                node[w] += scale * delta[w];
+            }
+        }
+        for (int i = 0; i < paths.reached; i++) {
+            delta[paths.order[i]] = 0;
+        }
+    }
+
+    /**
+     * Adds both directions of every edge together, and halves them, since each pair was counted twice
+     * @param graph
+     * @param edge
+     */
+    static void symmetrize(CsrGraph graph, double[] edge) {
+        int[] offsets = graph.getOffsets();
+        int[] neighbors = graph.getNeighbors();
+        for (int u = 0; u < graph.size(); u++) {
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                int v = neighbors[k];
+                if (u < v) {
+                    int reverse = graph.slot(v, u);
+                    double total = (edge[k] + edge[reverse]) / 2;
+                    edge[k] = total;
+                    edge[reverse] = total;
+                }
+            }
+        }
+    }
+
+    private class SourceTask extends RecursiveTask<double[][]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        SourceTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[][] compute() {
+            if (to - from <= SOURCES_PER_TASK) {
+                ShortestPaths paths = new ShortestPaths(graph, weighted);
+                double[] delta = new double[graph.size()];
+                double[] node = new double[graph.size()];
+                double[] edge = new double[graph.getNeighbors().length];
+                for (int source = from; source < to; source++) {
+                    paths.run(source);
+                    accumulate(paths, delta, node, edge, 1);
+                }
+                return new double[][]{node, edge};
+            }
+            int middle = (from + to) >>> 1;
+            SourceTask left = new SourceTask(from, middle);
+            left.fork();
+            double[][] right = new SourceTask(middle, to).compute();
+            double[][] sums = left.join();
+            for (int i = 0; i < sums.length; i++) {
+                for (int j = 0; j < sums[i].length; j++) {
+                    sums[i][j] += right[i][j];
+                }
+            }
+            return sums;
+        }
+    }
+}
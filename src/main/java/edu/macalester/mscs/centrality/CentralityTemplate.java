@@ -0,0 +1,126 @@
+package edu.macalester.mscs.centrality;
+
+import edu.macalester.mscs.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The centrality table template, parsed once into a list of instructions that
+ * CentraltyTableMaker can render for any number of books.
+ *
+ * Lines of the template that start with "%%%" are placeholders, such as "%%% degreeData" or
+ * "%%% closenessRanking", and every other line is copied as it is. Placeholders that are not
+ * recognized are also copied, with a warning.
+ */
+public class CentralityTemplate {
+
+    public enum Kind {
+        /** a line to copy */
+        TEXT,
+        /** the character names for the y axis */
+        Y_COORDS,
+        /** the values of an attribute, scaled by its maximum */
+        DATA,
+        /** the ranks of an attribute, largest first */
+        RANKING,
+        /** the ranks of an attribute, smallest first */
+        REVERSE_RANKING,
+        /** the axis labels of an attribute with integer values */
+        INTEGER_TICK,
+        /** the axis labels of an attribute with decimal values */
+        DECIMAL_TICK,
+        /** a placeholder that is not recognized, which is copied */
+        UNKNOWN
+    }
+
+    public static class Instruction {
+        private final Kind kind;
+        private final String attribute;
+        private final String line;
+
+        Instruction(Kind kind, String attribute, String line) {
+            this.kind = kind;
+            this.attribute = attribute;
+            this.line = line;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Returns the node data column, or null for TEXT, Y_COORDS and UNKNOWN
+         * @return
+         */
+        public String getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * Returns the template line
+         * @return
+         */
+        public String getLine() {
+            return line;
+        }
+    }
+
+    private static final String PREFIX = "%%%";
+
+    // the placeholder names, with the column, ranking direction and tick format of each
+    private static final String[] NAMES = {"degree", "weightedDegree", "eigenvector", "pageRank", "closeness", "betweenness"};
+    private static final String[] ATTRIBUTES = {NetworkCharacter.DEGREE, NetworkCharacter.WEIGHTED_DEGREE,
+            NetworkCharacter.EIGENVECTOR_CENTRALITY, NetworkCharacter.PAGE_RANK,
+            NetworkCharacter.CLOSENESS_CENTRALITY, NetworkCharacter.BETWEENNESS_CENTRALITY};
+    private static final boolean[] REVERSED = {false, false, false, false, true, false};
+    private static final boolean[] INTEGERS = {true, true, false, false, false, false};
+
+    private final List<Instruction> instructions;
+
+    private CentralityTemplate(List<Instruction> instructions) {
+        this.instructions = Collections.unmodifiableList(instructions);
+    }
+
+    /**
+     * Reads and parses a template file
+     * @param fileName
+     * @return
+     */
+    public static CentralityTemplate read(String fileName) {
+        return parse(FileUtils.readFile(fileName));
+    }
+
+    public static CentralityTemplate parse(List<String> lines) {
+        List<Instruction> instructions = new ArrayList<>();
+        for (String line : lines) {
+            instructions.add(parseLine(line));
+        }
+        return new CentralityTemplate(instructions);
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    private static Instruction parseLine(String line) {
+        if (!line.startsWith(PREFIX)) {
+            return new Instruction(Kind.TEXT, null, line);
+        }
+        if (line.startsWith(PREFIX + " yCoords")) {
+            return new Instruction(Kind.Y_COORDS, null, line);
+        }
+        for (int i = 0; i < NAMES.length; i++) {
+            String placeholder = PREFIX + " " + NAMES[i];
+            if (line.startsWith(placeholder + "Data")) {
+                return new Instruction(Kind.DATA, ATTRIBUTES[i], line);
+            } else if (line.startsWith(placeholder + "Ranking")) {
+                return new Instruction(REVERSED[i] ? Kind.REVERSE_RANKING : Kind.RANKING, ATTRIBUTES[i], line);
+            } else if (line.startsWith(placeholder + "Tick")) {
+                return new Instruction(INTEGERS[i] ? Kind.INTEGER_TICK : Kind.DECIMAL_TICK, ATTRIBUTES[i], line);
+            }
+        }
+        return new Instruction(Kind.UNKNOWN, null, line);
+    }
+}
@@ -2,8 +2,10 @@ package edu.macalester.mscs.centrality;
 
 import edu.macalester.mscs.utils.FileUtils;
 
+import java.io.File;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Created by abeverid on 6/7/16.
@@ -21,31 +23,47 @@ public class CentraltyTableMaker {
 
     public static final String RANK_LINE_TEMPLATE = "\\node at (#XVAL,#YVAL) { \\tiny \\mycircled[10]{#RANK}  };";
 
+    public static final String[] BOOK_NUMS = {"1", "2", "3", "4", "5", "-all"};
+
+    public static final double[] MIN_PAGE_RANKS = {0.013,0.01, 0.009, 0.009,0.0089,0.006};
+
 
     private Set<NetworkCharacter> charSet = null;
 
+    private Rankings rankings = null;
+
     private String dataFileName;
 
     private String outputFileName;
 
     private double minPageRank;
 
+    private boolean verbose = true;
+
 
     public CentraltyTableMaker(String bookNum, double minimumPageRank) {
-        dataFileName = DEFAULT_DATA_FILE_NAME.replace("#NUM", bookNum);
+        this(bookNum, minimumPageRank, DEFAULT_DATA_FILE_NAME.replace("#NUM", bookNum));
+    }
+
+    /**
+     * Uses the given node data file instead of the default Gephi export,
+     * for example one written by NodeDataMaker.
+     * @param bookNum
+     * @param minimumPageRank
+     * @param dataFileName
+     */
+    public CentraltyTableMaker(String bookNum, double minimumPageRank, String dataFileName) {
+        this.dataFileName = dataFileName;
         outputFileName = DEFAULT_OUTPUT_FILE_NAME.replace("#NUM", bookNum);
         minPageRank = minimumPageRank;
     }
 
     public static void main(String[] args) {
-        String[] bookNums = {"1", "2", "3", "4", "5", "-all"};
-        double[] minPageRanks = {0.013,0.01, 0.009, 0.009,0.0089,0.006};
-
-        for (int i=0; i < 1; i++) {
-            CentraltyTableMaker maker = new CentraltyTableMaker(bookNums[i], minPageRanks[i]);
-
-            maker.createCentralityTable();
+        String[] dataFileNames = new String[BOOK_NUMS.length];
+        for (int i=0; i < BOOK_NUMS.length; i++) {
+            dataFileNames[i] = DEFAULT_DATA_FILE_NAME.replace("#NUM", BOOK_NUMS[i]);
         }
+        createCentralityTables(BOOK_NUMS, MIN_PAGE_RANKS, dataFileNames);
     }
 
     public static void main1(String[] args) {
@@ -60,109 +78,131 @@ public class CentraltyTableMaker {
 
 
     public void createCentralityTable() {
+        createCentralityTable(CentralityTemplate.read(TEMPLATE_NAME));
+    }
+
+    /**
+     * Renders the template for this book and writes it to the output file
+     * @param template
+     */
+    public void createCentralityTable(CentralityTemplate template) {
         // load in the characters with high PageRank
         Set<NetworkCharacter> charSet = getNetworkCharactersByPageRank(getMinPageRank());
 
         DecimalFormat decimalFormat = new DecimalFormat("#.###");
 
-
-
         // create the file from the template
-        List<String> templateLines = FileUtils.readFile(TEMPLATE_NAME);
         List<String> newLines = new ArrayList<String>();
 
-        for (String line : templateLines) {
-            if (! line.startsWith("%%%")) {
-                newLines.add(line);
-            } else if (line.startsWith("%%% yCoords")) {
-                newLines.add(getCoordinateLine(charSet));
-            } else if (line.startsWith("%%% degreeData")) {
-                for (NetworkCharacter character : charSet) {
-                    double maxDegree = getMaxDegree();
-                    double deg = character.getDegree() / maxDegree;
-                    newLines.add(deg + "\t" + character.getShortName());
-                }
-            } else if (line.startsWith("%%% degreeRanking")) {
-                newLines.addAll(getAttributeRankLines(NetworkCharacter.DEGREE, charSet));
-            } else if (line.startsWith("%%% degreeTick")) {
-                newLines.add("xticklabels={0,,,," + (int) getMaxDegree() + "},");
-            } else if (line.startsWith("%%% weightedDegreeData")) {
-                for (NetworkCharacter character : charSet) {
-                    double maxWeightedDegree = getMaxWeightedDegree();
-                    double weightDeg = character.getWeightedDegree() / maxWeightedDegree;
-                    newLines.add(weightDeg + "\t" + character.getShortName());
-                }
-            } else if (line.startsWith("%%% weightedDegreeRanking")) {
-                newLines.addAll(getAttributeRankLines(NetworkCharacter.WEIGHTED_DEGREE, charSet));
-            } else if (line.startsWith("%%% weightedDegreeTick")) {
-                newLines.add("xticklabels={0,,,," + (int) getMaxWeightedDegree() + "},");
-            } else if (line.startsWith("%%% eigenvectorData")) {
-                for (NetworkCharacter character : charSet) {
-                    double maxEig = getMaxEigenvector();
-                    double eig = character.getEigenvector() / maxEig;
-                    newLines.add(eig + "\t" + character.getShortName());
-                }
-            } else if (line.startsWith("%%% eigenvectorRanking")) {
-                newLines.addAll(getAttributeRankLines(NetworkCharacter.EIGENVECTOR_CENTRALITY, charSet));
-            } else if (line.startsWith("%%% eigenvectorTick")) {
-                newLines.add("xticklabels={0,,,," +  decimalFormat.format(getMaxEigenvector()) + "},");
-            } else if (line.startsWith("%%% pageRankData")) {
-                for (NetworkCharacter character : charSet) {
-                    double max = getMaxPageRank();
-                    double pr = character.getPageRank() / max;
-                    newLines.add(pr + "\t" + character.getShortName());
-                }
-            } else if (line.startsWith("%%% pageRankRanking")) {
-                newLines.addAll(getAttributeRankLines(NetworkCharacter.PAGE_RANK, charSet));
-            } else if (line.startsWith("%%% pageRankTick")) {
-                newLines.add("xticklabels={0,,,," +  decimalFormat.format(getMaxPageRank()) + "},");
-            } else if (line.startsWith("%%% closenessData")) {
-                for (NetworkCharacter character : charSet) {
-                    double max = getMaxCloseness();
-                    double pr = character.getCloseness() / max;
-                    newLines.add(pr + "\t" + character.getShortName());
-                }
-            } else if (line.startsWith("%%% closenessRanking")) {
-                newLines.addAll(getAttributeReverseRankLines(NetworkCharacter.CLOSENESS_CENTRALITY, charSet));
-            } else if (line.startsWith("%%% closenessTick")) {
-                newLines.add("xticklabels={0,,,," +  decimalFormat.format(getMaxCloseness()) + "},");
-            } else if (line.startsWith("%%% betweennessData")) {
-                for (NetworkCharacter character : charSet) {
-                    double max = getMaxBetweenness();
-                    double pr = character.getBetweenness() / max;
-                    newLines.add(pr + "\t" + character.getShortName());
-                }
-            } else if (line.startsWith("%%% betweennessRanking")) {
-                newLines.addAll(getAttributeRankLines(NetworkCharacter.BETWEENNESS_CENTRALITY, charSet));
-            } else if (line.startsWith("%%% betweennessTick")) {
-                newLines.add("xticklabels={0,,,," +  decimalFormat.format(getMaxBetweenness()) + "},");
-            } else {
-                System.out.println("Unknown category: " + line);
-                newLines.add(line);
+        for (CentralityTemplate.Instruction instruction : template.getInstructions()) {
+            String attribute = instruction.getAttribute();
+            switch (instruction.getKind()) {
+                case TEXT:
+                    newLines.add(instruction.getLine());
+                    break;
+                case Y_COORDS:
+                    newLines.add(getCoordinateLine(charSet));
+                    break;
+                case DATA:
+                    double max = getMax(attribute);
+                    for (NetworkCharacter character : charSet) {
+                        double value = character.getAttributeDouble(attribute) / max;
+                        newLines.add(value + "\t" + character.getShortName());
+                    }
+                    break;
+                case RANKING:
+                    newLines.addAll(getAttributeRankLines(attribute, charSet));
+                    break;
+                case REVERSE_RANKING:
+                    newLines.addAll(getAttributeReverseRankLines(attribute, charSet));
+                    break;
+                case INTEGER_TICK:
+                    newLines.add("xticklabels={0,,,," + (int) getMax(attribute) + "},");
+                    break;
+                case DECIMAL_TICK:
+                    newLines.add("xticklabels={0,,,," +  decimalFormat.format(getMax(attribute)) + "},");
+                    break;
+                default:
+                    log("Unknown category: " + instruction.getLine());
+                    newLines.add(instruction.getLine());
             }
         }
 
+        new File(getOutputFileName()).getAbsoluteFile().getParentFile().mkdirs();
         FileUtils.writeFile(newLines, getOutputFileName());
 
     }
 
+    /**
+     * Creates the centrality tables for several books at once. The template is parsed once,
+     * and each book is loaded, ranked and rendered by its own task, without console output.
+     * @param bookNums
+     * @param minPageRanks
+     * @param dataFileNames
+     */
+    public static void createCentralityTables(String[] bookNums, double[] minPageRanks, String[] dataFileNames) {
+        final CentralityTemplate template = CentralityTemplate.read(TEMPLATE_NAME);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < bookNums.length; i++) {
+            final CentraltyTableMaker maker = new CentraltyTableMaker(bookNums[i], minPageRanks[i], dataFileNames[i]);
+            maker.setVerbose(false);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    maker.createCentralityTable(template);
+                    return null;
+                }
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error creating centrality tables", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    /**
+     * Turns the progress messages on the console on or off
+     * @param verbose
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    private void log(String message) {
+        if (verbose) {
+            System.out.println(message);
+        }
+    }
+
 
     private Set<NetworkCharacter> getNetworkCharacters() {
 
         if (charSet == null) {
 
-            System.out.println(getDataFileName());
-            List<String> lines = FileUtils.readFile(getDataFileName());
+            log(getDataFileName());
+            NodeTable table = NodeTable.read(getDataFileName());
+            rankings = new Rankings(table);
 
             charSet = new TreeSet<NetworkCharacter>();
 
-            String[] header = lines.get(0).split(",");
-
-            for (int i = 1; i < lines.size(); i++) {
-                String[] line = lines.get(i).split(",");
-                System.out.println("adding " + line[0]);
-                charSet.add(new NetworkCharacter(header, line));
-                System.out.println("added " + line[0]);
+            for (int row = 0; row < table.size(); row++) {
+                NetworkCharacter character = new NetworkCharacter(table, row);
+                log("adding " + character.getId());
+                charSet.add(character);
+                log("added " + character.getId());
             }
         }
 
@@ -177,14 +217,14 @@ public class CentraltyTableMaker {
     private Set<NetworkCharacter> getNetworkCharactersByPageRank(double minPageRank) {
         TreeSet<NetworkCharacter> list = new TreeSet<NetworkCharacter>();
 
-        System.out.println("Using min pageRank=" + minPageRank + " and total characters=" + getNetworkCharacters().size());
+        log("Using min pageRank=" + minPageRank + " and total characters=" + getNetworkCharacters().size());
 
         for (NetworkCharacter character : getNetworkCharacters()) {
             if (character.getPageRank() >= minPageRank) {
                 list.add(character);
-                System.out.println("\t added " + character.getId());
+                log("\t added " + character.getId());
             } else {
-                System.out.println(minPageRank + " is larger than " + character.getPageRank() + " for " + character.getId());
+                log(minPageRank + " is larger than " + character.getPageRank() + " for " + character.getId());
             }
         }
 
@@ -192,90 +232,14 @@ public class CentraltyTableMaker {
     }
 
 
+    /**
+     * Returns the largest value of the attribute over all of the characters, or 0 if they are all negative
+     * @param attributeName
+     * @return
+     */
     private double getMax(String attributeName) {
-        double max = 0.0;
-
-        for (NetworkCharacter nc : getNetworkCharacters()) {
-            if (nc.getAttributeDouble(attributeName) > max) {
-                max = nc.getAttributeDouble(attributeName);
-            }
-        }
-
-        return max;
-
-    }
-
-
-    private double getMaxDegree() {
-        double degree = 0.0;
-
-        for (NetworkCharacter nc : getNetworkCharacters()) {
-            if (nc.getDegree() > degree) {
-                degree = nc.getDegree();
-            }
-        }
-
-        return degree;
-    }
-
-    private double getMaxWeightedDegree() {
-        double wd = 0.0;
-
-        for (NetworkCharacter nc : getNetworkCharacters()) {
-            if (nc.getWeightedDegree() > wd) {
-                wd = nc.getWeightedDegree();
-            }
-        }
-
-        return wd;
-    }
-
-    private double getMaxEigenvector() {
-        double eig = 0.0;
-
-        for (NetworkCharacter nc : getNetworkCharacters()) {
-            if (nc.getEigenvector() > eig) {
-                eig = nc.getEigenvector();
-            }
-        }
-
-        return eig;
-    }
-
-    private double getMaxPageRank() {
-        double max = 0.0;
-
-        for (NetworkCharacter nc : getNetworkCharacters()) {
-            if (nc.getPageRank() > max) {
-                max = nc.getPageRank();
-            }
-        }
-
-        return max;
-    }
-
-    private double getMaxCloseness() {
-        double max = 0.0;
-
-        for (NetworkCharacter nc : getNetworkCharacters()) {
-            if (nc.getCloseness() > max) {
-                max = nc.getCloseness();
-            }
-        }
-
-        return max;
-    }
-
-    private double getMaxBetweenness() {
-        double max = 0.0;
-
-        for (NetworkCharacter nc : getNetworkCharacters()) {
-            if (nc.getBetweenness() > max) {
-                max = nc.getBetweenness();
-            }
-        }
-
-        return max;
+        getNetworkCharacters();
+        return rankings.getMax(attributeName);
     }
 
 
@@ -315,42 +279,18 @@ public class CentraltyTableMaker {
         return getRankByAttribute(attributeName, false);
     }
 
+    /**
+     * Returns the competition rank of every character by the attribute, where 1 is the largest value,
+     * or the smallest if reverse is true. The ranks are computed once per data file.
+     * @param attributeName
+     * @param reverse
+     * @return
+     */
     private Map<NetworkCharacter, Integer> getRankByAttribute(String attributeName, boolean reverse) {
-        List<NetworkCharacter> charList = new ArrayList(charSet);
-        Collections.sort(charList, new NetworkCharacterComparator(attributeName));
-
-        if (reverse) {
-            Collections.reverse(charList);
-        }
-
         HashMap<NetworkCharacter, Integer> rankMap = new HashMap<>();
-
-        int currentRank = 0;
-        double currentValue = 0.0;
-
-        for (int i=0; i < charList.size(); i++) {
-            NetworkCharacter c = charList.get(i);
-
-            if (currentRank == 0) {
-                currentRank = 1;
-                currentValue = c.getAttributeDouble(attributeName);
-            } else if (reverse) {
-                if (c.getAttributeDouble(attributeName) > currentValue) {
-                    currentRank = i+1;
-                    currentValue = c.getAttributeDouble(attributeName);
-                }
-            } else {
-                if (c.getAttributeDouble(attributeName) < currentValue) {
-                    currentRank = i+1;
-                    currentValue = c.getAttributeDouble(attributeName);
-                }
-            }
-
-            rankMap.put(c, new Integer(currentRank));
-
+        for (NetworkCharacter c : getNetworkCharacters()) {
+            rankMap.put(c, rankings.getRank(attributeName, c.getRow(), reverse));
         }
-
-
         return rankMap;
     }
 
@@ -379,12 +319,11 @@ public class CentraltyTableMaker {
         ArrayList<String> lines = new ArrayList<>();
         double maxAttribute = getMax(attributeName);
         double yval = charSet.size() * 0.5 - 0.05;
-        Map<NetworkCharacter, Integer> map = getRankByAttribute(attributeName);
         for (NetworkCharacter character : charSet) {
             double xval = character.getAttributeDouble(attributeName)/maxAttribute * 1.3 + .22;
             lines.add(RANK_LINE_TEMPLATE.replace("#XVAL", Double.toString(xval)).
                     replace("#YVAL", Double.toString(yval)).
-                    replace("#RANK", map.get(character).toString()));
+                    replace("#RANK", Integer.toString(rankings.getRank(attributeName, character.getRow()))));
             yval = yval - 0.5;
         }
 
@@ -396,12 +335,11 @@ public class CentraltyTableMaker {
         ArrayList<String> lines = new ArrayList<>();
         double maxAttribute = getMax(attributeName);
         double yval = charSet.size() * 0.5 - 0.05;
-        Map<NetworkCharacter, Integer> map = getRankByAttribute(attributeName, true);
         for (NetworkCharacter character : charSet) {
             double xval = character.getAttributeDouble(attributeName)/maxAttribute * 1.3 + .22;
             lines.add(RANK_LINE_TEMPLATE.replace("#XVAL", Double.toString(xval)).
                     replace("#YVAL", Double.toString(yval)).
-                    replace("#RANK", map.get(character).toString()));
+                    replace("#RANK", Integer.toString(rankings.getReverseRank(attributeName, character.getRow()))));
             yval = yval - 0.5;
         }
 
@@ -0,0 +1,254 @@
+package edu.macalester.mscs.centrality;
+
+import edu.macalester.mscs.network.Matrix;
+import edu.macalester.mscs.utils.FileUtils;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * An immutable compressed sparse row (CSR) copy of the adjacency of a Matrix,
+ * which is what the centrality algorithms iterate over.
+ *
+ * The neighbors of vertex i are neighbors[offsets[i]] to neighbors[offsets[i+1] - 1],
+ * in increasing order, and weights holds the co-occurrence counts of those edges.
+ * Since the network is undirected, every edge appears once in each direction.
+ *
+ * A graph can be saved as a binary snapshot and read back without the matrix it came from.
+ */
+public class CsrGraph {
+
+    // "CSRG", then the format version
+    private static final int MAGIC = 0x43535247;
+    private static final int VERSION = 1;
+
+    private final String[] names;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final double[] weights;
+    private final double[] weightedDegrees;
+    private final double[] lengths;
+
+    public CsrGraph(String[] names, int[] offsets, int[] neighbors, double[] weights) {
+        this.names = names;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.weights = weights;
+        this.weightedDegrees = new double[names.length];
+        this.lengths = new double[weights.length];
+        for (int k = 0; k < weights.length; k++) {
+            lengths[k] = 1.0 / weights[k];
+        }
+        for (int i = 0; i < names.length; i++) {
+            double sum = 0;
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                sum += weights[k];
+            }
+            weightedDegrees[i] = sum;
+        }
+    }
+
+    /**
+     * Copies the adjacency of the matrix. The matrix is not referenced afterwards.
+     * @param matrix
+     * @return
+     */
+    public static CsrGraph fromMatrix(Matrix matrix) {
+        return fromAdjacency(matrix.getCharacters().clone(), matrix.getMatrix());
+    }
+
+    /**
+     * Copies a symmetric adjacency matrix of co-occurrence counts, ignoring the diagonal
+     * @param names the name of each row
+     * @param adjacency
+     * @return
+     */
+    public static CsrGraph fromAdjacency(String[] names, int[][] adjacency) {
+        int n = names.length;
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            int degree = 0;
+            for (int j = 0; j < n; j++) {
+                if (i != j && adjacency[i][j] > 0) {
+                    degree++;
+                }
+            }
+            offsets[i + 1] = offsets[i] + degree;
+        }
+        int[] neighbors = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        for (int i = 0; i < n; i++) {
+            int k = offsets[i];
+            for (int j = 0; j < n; j++) {
+                if (i != j && adjacency[i][j] > 0) {
+                    neighbors[k] = j;
+                    weights[k] = adjacency[i][j];
+                    k++;
+                }
+            }
+        }
+        return new CsrGraph(names, offsets, neighbors, weights);
+    }
+
+    /**
+     * Reads a graph saved by write
+     * @param file
+     * @return
+     */
+    public static CsrGraph read(String file) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), FileUtils.BUFFER_SIZE))) {
+            return readFrom(in);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading graph snapshot \'" + file + "\'", e);
+        }
+    }
+
+    /**
+     * Reads a graph written by writeTo, leaving the stream open
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static CsrGraph readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a graph snapshot");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported graph snapshot version " + version);
+        }
+        int n = in.readInt();
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) {
+            names[i] = in.readUTF();
+        }
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i <= n; i++) {
+            offsets[i] = in.readInt();
+        }
+        int[] neighbors = new int[offsets[n]];
+        for (int k = 0; k < neighbors.length; k++) {
+            neighbors[k] = in.readInt();
+        }
+        double[] weights = new double[offsets[n]];
+        for (int k = 0; k < weights.length; k++) {
+            weights[k] = in.readDouble();
+        }
+        return new CsrGraph(names, offsets, neighbors, weights);
+    }
+
+    /**
+     * Saves the graph as a binary snapshot, which replaces the file only once it is complete
+     * @param file
+     */
+    public void write(String file) {
+        new File(file).getAbsoluteFile().getParentFile().mkdirs();
+        try (FileUtils.AtomicOutputStream out = FileUtils.openOutputStream(file)) {
+            writeTo(new DataOutputStream(out));
+            out.commit();
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing graph snapshot \'" + file + "\'", e);
+        }
+    }
+
+    /**
+     * Writes the graph to the stream, leaving it open
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(names.length);
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        for (int neighbor : neighbors) {
+            out.writeInt(neighbor);
+        }
+        for (double weight : weights) {
+            out.writeDouble(weight);
+        }
+    }
+
+    /**
+     * Returns the number of vertices
+     * @return
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the number of undirected edges
+     * @return
+     */
+    public int edgeCount() {
+        return neighbors.length / 2;
+    }
+
+    public String getName(int vertex) {
+        return names[vertex];
+    }
+
+    public String[] getNames() {
+        return names;
+    }
+
+    public int degree(int vertex) {
+        return offsets[vertex + 1] - offsets[vertex];
+    }
+
+    public double weightedDegree(int vertex) {
+        return weightedDegrees[vertex];
+    }
+
+    /**
+     * Returns the position of the edge from u to v in the neighbors and weights arrays,
+     * or -1 if there is no such edge
+     * @param u
+     * @param v
+     * @return
+     */
+    public int slot(int u, int v) {
+        int index = Arrays.binarySearch(neighbors, offsets[u], offsets[u + 1], v);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Returns the row offsets, which must not be modified
+     * @return
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Returns the column indices, which must not be modified
+     * @return
+     */
+    public int[] getNeighbors() {
+        return neighbors;
+    }
+
+    /**
+     * Returns the edge weights, which must not be modified
+     * @return
+     */
+    public double[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * Returns the edge lengths for weighted shortest paths, which are the inverse weights,
+     * so that characters who appear together more often are closer. Must not be modified.
+     * @return
+     */
+    public double[] getLengths() {
+        return lengths;
+    }
+}
@@ -0,0 +1,287 @@
+package edu.macalester.mscs.centrality;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The distance based measures, eccentricity, closeness and harmonic closeness of every vertex,
+ * along with the diameter, radius and average path length, from a single all-sources sweep.
+ *
+ * Without weights, the sweep is a bit-parallel breadth-first search that follows 64 sources at once,
+ * one bit per source in a long for every vertex. Since the network is undirected, the number of bits
+ * that reach a vertex at each level is the number of sources at that distance from it, which is all
+ * the measures need. With weights, it runs Dijkstra's algorithm from every source. Either way the
+ * sources are split across a ForkJoinPool.
+ *
+ * Closeness follows Gephi 0.8, as in our node data: it is the average distance to the reachable
+ * vertices, so smaller is more central. Harmonic closeness is the sum of inverse distances,
+ * divided by n - 1, so unreachable vertices count as infinitely far.
+ */
+public class DistanceMetrics {
+
+    private static final int SOURCES_PER_BATCH = 64;
+    private static final int SOURCES_PER_TASK = 16;
+
+    private final CsrGraph graph;
+    private final boolean weighted;
+
+    private double[] eccentricity = null;
+    private double[] farness = null;
+    private double[] harmonic = null;
+    private long[] reachable = null;
+
+    public DistanceMetrics(CsrGraph graph, boolean weighted) {
+        this.graph = graph;
+        this.weighted = weighted;
+    }
+
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    public boolean isWeighted() {
+        return weighted;
+    }
+
+    /**
+     * Runs the sweep, if it has not been run already
+     * @return this
+     */
+    public synchronized DistanceMetrics compute() {
+        if (eccentricity == null) {
+            int n = graph.size();
+            Sums sums;
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            if (weighted) {
+                sums = pool.invoke(new DijkstraTask(0, n));
+            } else {
+                sums = pool.invoke(new BitParallelTask(0, (n + SOURCES_PER_BATCH - 1) / SOURCES_PER_BATCH));
+            }
+            eccentricity = sums.eccentricity;
+            farness = sums.farness;
+            harmonic = sums.harmonic;
+            reachable = sums.reachable;
+        }
+        return this;
+    }
+
+    /**
+     * Returns the distance from each vertex to the farthest vertex it can reach
+     * @return
+     */
+    public double[] getEccentricity() {
+        compute();
+        return eccentricity.clone();
+    }
+
+    /**
+     * Returns the average distance from each vertex to the vertices it can reach, or 0 if there are none
+     * @return
+     */
+    public double[] getCloseness() {
+        compute();
+        double[] closeness = new double[farness.length];
+        for (int v = 0; v < closeness.length; v++) {
+            closeness[v] = reachable[v] > 0 ? farness[v] / reachable[v] : 0;
+        }
+        return closeness;
+    }
+
+    /**
+     * Returns the sum of the inverse distances from each vertex to the others, divided by n - 1
+     * @return
+     */
+    public double[] getHarmonicCloseness() {
+        compute();
+        double[] closeness = new double[harmonic.length];
+        for (int v = 0; v < closeness.length && closeness.length > 1; v++) {
+            closeness[v] = harmonic[v] / (closeness.length - 1);
+        }
+        return closeness;
+    }
+
+    /**
+     * Returns the largest eccentricity
+     * @return
+     */
+    public double getDiameter() {
+        compute();
+        double diameter = 0;
+        for (double e : eccentricity) {
+            diameter = Math.max(diameter, e);
+        }
+        return diameter;
+    }
+
+    /**
+     * Returns the smallest eccentricity among the vertices with at least one edge
+     * @return
+     */
+    public double getRadius() {
+        compute();
+        double radius = Double.POSITIVE_INFINITY;
+        for (int v = 0; v < eccentricity.length; v++) {
+            if (reachable[v] > 0) {
+                radius = Math.min(radius, eccentricity[v]);
+            }
+        }
+        return radius == Double.POSITIVE_INFINITY ? 0 : radius;
+    }
+
+    /**
+     * Returns the average distance over all pairs of vertices that are connected
+     * @return
+     */
+    public double getAveragePathLength() {
+        compute();
+        double total = 0;
+        long pairs = 0;
+        for (int v = 0; v < farness.length; v++) {
+            total += farness[v];
+            pairs += reachable[v];
+        }
+        return pairs > 0 ? total / pairs : 0;
+    }
+
+    /**
+     * Per vertex accumulators, one set per task
+     */
+    private static class Sums {
+        final double[] eccentricity;
+        final double[] farness;
+        final double[] harmonic;
+        final long[] reachable;
+
+        Sums(int n) {
+            eccentricity = new double[n];
+            farness = new double[n];
+            harmonic = new double[n];
+            reachable = new long[n];
+        }
+
+        Sums add(Sums other) {
+            for (int v = 0; v < farness.length; v++) {
+                eccentricity[v] = Math.max(eccentricity[v], other.eccentricity[v]);
+                farness[v] += other.farness[v];
+                harmonic[v] += other.harmonic[v];
+                reachable[v] += other.reachable[v];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Breadth-first search from the sources in a range of batches of 64
+     */
+    private class BitParallelTask extends RecursiveTask<Sums> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int fromBatch;
+        private final int toBatch;
+
+        BitParallelTask(int fromBatch, int toBatch) {
+            this.fromBatch = fromBatch;
+            this.toBatch = toBatch;
+        }
+
+        @Override
+        protected Sums compute() {
+            if (toBatch - fromBatch <= 1) {
+                Sums sums = new Sums(graph.size());
+                for (int batch = fromBatch; batch < toBatch; batch++) {
+                    search(batch * SOURCES_PER_BATCH, sums);
+                }
+                return sums;
+            }
+            int middle = (fromBatch + toBatch) >>> 1;
+            BitParallelTask left = new BitParallelTask(fromBatch, middle);
+            left.fork();
+            Sums right = new BitParallelTask(middle, toBatch).compute();
+            return left.join().add(right);
+        }
+
+        private void search(int firstSource, Sums sums) {
+            int n = graph.size();
+            int[] offsets = graph.getOffsets();
+            int[] neighbors = graph.getNeighbors();
+            long[] visited = new long[n];
+            long[] frontier = new long[n];
+            long[] next = new long[n];
+            int sources = Math.min(SOURCES_PER_BATCH, n - firstSource);
+            long all = sources == 64 ? -1L : (1L << sources) - 1;
+            for (int i = 0; i < sources; i++) {
+                visited[firstSource + i] = 1L << i;
+                frontier[firstSource + i] = 1L << i;
+            }
+            boolean active = true;
+            for (int depth = 1; active; depth++) {
+                active = false;
+                for (int v = 0; v < n; v++) {
+                    long bits = 0;
+                    if (visited[v] != all) {
+                        for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                            bits |= frontier[neighbors[k]];
+                        }
+                        bits &= ~visited[v];
+                    }
+                    next[v] = bits;
+                }
+                for (int v = 0; v < n; v++) {
+                    if (next[v] != 0) {
+                        active = true;
+                        visited[v] |= next[v];
+                        int count = Long.bitCount(next[v]);
+                        sums.farness[v] += (double) depth * count;
+                        sums.harmonic[v] += (double) count / depth;
+                        sums.reachable[v] += count;
+                        sums.eccentricity[v] = Math.max(sums.eccentricity[v], depth);
+                    }
+                }
+                long[] temp = frontier;
+                frontier = next;
+                next = temp;
+            }
+        }
+    }
+
+    /**
+     * Dijkstra's algorithm from a range of sources, which only writes the entries of its own sources
+     */
+    private class DijkstraTask extends RecursiveTask<Sums> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        DijkstraTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Sums compute() {
+            if (to - from <= SOURCES_PER_TASK) {
+                Sums sums = new Sums(graph.size());
+                ShortestPaths paths = new ShortestPaths(graph, true);
+                for (int source = from; source < to; source++) {
+                    paths.run(source);
+                    for (int i = 1; i < paths.reached; i++) {
+                        double d = paths.distance[paths.order[i]];
+                        sums.farness[source] += d;
+                        sums.harmonic[source] += 1 / d;
+                    }
+                    sums.reachable[source] = paths.reached - 1;
+                    sums.eccentricity[source] = paths.distance[paths.order[paths.reached - 1]];
+                }
+                return sums;
+            }
+            int middle = (from + to) >>> 1;
+            DijkstraTask left = new DijkstraTask(from, middle);
+            left.fork();
+            Sums right = new DijkstraTask(middle, to).compute();
+            return left.join().add(right);
+        }
+    }
+}
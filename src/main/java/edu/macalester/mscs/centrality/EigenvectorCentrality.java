@@ -0,0 +1,110 @@
+package edu.macalester.mscs.centrality;
+
+/**
+ * Eigenvector centrality by power iteration on the SparseKernel.
+ *
+ * Each step multiplies by A + I rather than A. The shift has the same eigenvectors, but it keeps
+ * the iteration from oscillating on bipartite parts of the network, which would otherwise never converge.
+ * The result is scaled so that the most central vertex has 1, as in Gephi.
+ */
+public class EigenvectorCentrality {
+
+    private final SparseKernel kernel;
+    private final double tolerance;
+    private final int maxIterations;
+    private int iterations = 0;
+    private double eigenvalue = 0;
+
+    /**
+     * Unweighted eigenvector centrality, as Gephi computes it
+     * @param graph
+     */
+    public EigenvectorCentrality(CsrGraph graph) {
+        this(new SparseKernel(graph, false), PageRank.DEFAULT_TOLERANCE, PageRank.DEFAULT_MAX_ITERATIONS);
+    }
+
+    public EigenvectorCentrality(SparseKernel kernel, double tolerance, int maxIterations) {
+        this.kernel = kernel;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Computes eigenvector centrality from the uniform vector
+     * @return the centrality of each vertex, with a maximum of 1
+     */
+    public double[] compute() {
+        return compute(null);
+    }
+
+    /**
+     * Computes eigenvector centrality, starting from the given vector if it is not null,
+     * such as the result for the previous book
+     * @param start may be null
+     * @return the centrality of each vertex, with a maximum of 1
+     */
+    public double[] compute(double[] start) {
+        int n = kernel.size();
+        double[] vector = PageRank.initialVector(start, n);
+        double[] next = new double[n];
+        iterations = 0;
+        eigenvalue = 0;
+        if (n == 0) {
+            return vector;
+        }
+        scaleToMax(vector);
+
+        double delta = Double.MAX_VALUE;
+        while (delta > tolerance && iterations < maxIterations) {
+            kernel.multiply(vector, next);
+            for (int i = 0; i < n; i++) {
+                next[i] += vector[i];
+            }
+            double max = scaleToMax(next);
+            delta = 0;
+            for (int i = 0; i < n; i++) {
+                delta += Math.abs(next[i] - vector[i]);
+            }
+            eigenvalue = max - 1;
+            double[] temp = vector;
+            vector = next;
+            next = temp;
+            iterations++;
+        }
+        return vector;
+    }
+
+    /**
+     * Returns the number of iterations taken by the last call to compute
+     * @return
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the largest eigenvalue of the adjacency matrix, as estimated by the last call to compute
+     * @return
+     */
+    public double getEigenvalue() {
+        return eigenvalue;
+    }
+
+    /**
+     * Divides the vector by its largest entry, if it is positive
+     * @param vector
+     * @return the largest entry
+     */
+    static double scaleToMax(double[] vector) {
+        double max = 0;
+        for (double value : vector) {
+            max = Math.max(max, value);
+        }
+        if (max > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= max;
+            }
+        }
+        return max;
+    }
+}
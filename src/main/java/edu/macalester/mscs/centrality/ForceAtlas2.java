@@ -0,0 +1,531 @@
+package edu.macalester.mscs.centrality;
+
+import edu.macalester.mscs.network.Matrix;
+import edu.macalester.mscs.utils.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A ForceAtlas2 layout of the network, as in Gephi, that runs without a display and scales to networks
+ * far larger than JUNG's FRLayout can handle.
+ *
+ * Every pair of vertices repels in proportion to the product of their degrees plus one, every edge
+ * attracts its ends in proportion to its weight and length, and gravity pulls everything toward the
+ * origin. The repulsion is approximated with a Barnes-Hut quadtree, which is rebuilt each iteration:
+ * a cell far enough away, relative to its size, acts as a single mass at its center, so each iteration
+ * takes O(n log n) rather than O(n^2). Each vertex then sums its own forces, so the vertices are
+ * processed in parallel without sharing any writes, and the result does not depend on the number of
+ * threads. The step size adapts per vertex to how much its force swings between iterations.
+ */
+public class ForceAtlas2 {
+
+    public static final int DEFAULT_ITERATIONS = 1000;
+    public static final double DEFAULT_GRAVITY = 1.0;
+    public static final double DEFAULT_THETA = 1.2;
+    public static final long DEFAULT_SEED = 42;
+
+    public static final String DEFAULT_OUTPUT_FILE_NAME = "src/main/resources/data/output/layout/GoT#NUM-layout.csv";
+
+    private static final double JITTER_TOLERANCE = 1.0;
+    private static final double MIN_SPEED_EFFICIENCY = 0.05;
+    private static final double MAX_RISE = 0.5;
+    // cells this deep only hold coincident vertices
+    private static final int MAX_DEPTH = 48;
+    // below this many vertices, forking costs more than it saves
+    private static final int PARALLEL_VERTICES = 512;
+    private static final int VERTICES_PER_TASK = 256;
+
+    private final CsrGraph graph;
+    private final double scalingRatio;
+    private final double gravity;
+    private final double theta;
+    private final int iterations;
+    private final long seed;
+    private final double[] masses;
+
+    private double[] x = null;
+    private double[] y = null;
+
+    public ForceAtlas2(Matrix matrix) {
+        this(CsrGraph.fromMatrix(matrix));
+    }
+
+    /**
+     * Uses Gephi's defaults, including a scaling ratio of 10 below 100 vertices and 2 above
+     * @param graph
+     */
+    public ForceAtlas2(CsrGraph graph) {
+        this(graph, graph.size() < 100 ? 10 : 2, DEFAULT_GRAVITY, DEFAULT_THETA, DEFAULT_ITERATIONS, DEFAULT_SEED);
+    }
+
+    /**
+     * @param graph
+     * @param scalingRatio the strength of the repulsion, relative to the attraction
+     * @param gravity the strength of the pull toward the origin
+     * @param theta the Barnes-Hut threshold on cell size over distance; 0 computes the repulsion exactly
+     * @param iterations
+     * @param seed for the random starting positions
+     */
+    public ForceAtlas2(CsrGraph graph, double scalingRatio, double gravity, double theta, int iterations, long seed) {
+        if (scalingRatio <= 0) {
+            throw new IllegalArgumentException("Invalid scaling ratio: " + scalingRatio);
+        }
+        if (theta < 0) {
+            throw new IllegalArgumentException("Invalid theta: " + theta);
+        }
+        this.graph = graph;
+        this.scalingRatio = scalingRatio;
+        this.gravity = gravity;
+        this.theta = theta;
+        this.iterations = iterations;
+        this.seed = seed;
+        this.masses = new double[graph.size()];
+        for (int v = 0; v < masses.length; v++) {
+            masses[v] = graph.degree(v) + 1;
+        }
+    }
+
+    /**
+     * Lays out every book and writes the coordinates
+     * @param args
+     */
+    public static void main(String[] args) {
+        List<Matrix> books = new ArrayList<>();
+        for (int i = 0; i < CentraltyTableMaker.BOOK_NUMS.length; i++) {
+            String bookNum = CentraltyTableMaker.BOOK_NUMS[i];
+            Matrix matrix;
+            if (i < NodeDataMaker.MATRIX_FILE_NAMES.length) {
+                matrix = Matrix.fromMatrixCsv(NodeDataMaker.MATRIX_FILE_NAMES[i]);
+                books.add(matrix);
+            } else {
+                matrix = Matrix.combine(books);
+            }
+            long start = System.currentTimeMillis();
+            ForceAtlas2 layout = new ForceAtlas2(matrix).compute();
+            System.out.println("Laid out book " + bookNum + " in " + (System.currentTimeMillis() - start) + " ms");
+
+            String file = DEFAULT_OUTPUT_FILE_NAME.replace("#NUM", bookNum);
+            new File(file).getAbsoluteFile().getParentFile().mkdirs();
+            Logger logger = Logger.toFile(file);
+            try {
+                layout.toCsvLog(logger);
+                logger.commit();
+            } finally {
+                logger.close();
+            }
+        }
+    }
+
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Runs the layout from random positions, if it has not been run already
+     * @return this
+     */
+    public synchronized ForceAtlas2 compute() {
+        if (x == null) {
+            int n = graph.size();
+            double[] startX = new double[n];
+            double[] startY = new double[n];
+            double spread = 10 * Math.sqrt(n);
+            Random random = new Random(seed);
+            for (int v = 0; v < n; v++) {
+                startX[v] = spread * (2 * random.nextDouble() - 1);
+                startY[v] = spread * (2 * random.nextDouble() - 1);
+            }
+            compute(startX, startY);
+        }
+        return this;
+    }
+
+    /**
+     * Runs the layout from the given positions, such as an earlier layout of the same characters
+     * @param startX indexed by vertex
+     * @param startY indexed by vertex
+     * @return this
+     */
+    public synchronized ForceAtlas2 compute(double[] startX, double[] startY) {
+        int n = graph.size();
+        if (startX.length != n || startY.length != n) {
+            throw new IllegalArgumentException("Expected " + n + " positions, got " + startX.length + " and " + startY.length);
+        }
+        double[] px = startX.clone();
+        double[] py = startY.clone();
+        double[] forceX = new double[n];
+        double[] forceY = new double[n];
+        double[] oldForceX = new double[n];
+        double[] oldForceY = new double[n];
+        QuadTree tree = new QuadTree(n);
+        double[] swinging = new double[n];
+        double speed = 1;
+        double speedEfficiency = 1;
+
+        ForkJoinPool pool = n >= PARALLEL_VERTICES ? ForkJoinPool.commonPool() : null;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            double[] temp = oldForceX;
+            oldForceX = forceX;
+            forceX = temp;
+            temp = oldForceY;
+            oldForceY = forceY;
+            forceY = temp;
+
+            tree.build(px, py);
+            ForceTask task = new ForceTask(tree, px, py, forceX, forceY, 0, n);
+            if (pool != null) {
+                pool.invoke(task);
+            } else {
+                task.compute();
+            }
+
+            // how much the forces swing, against how much they agree, sets the speed
+            double totalSwinging = 0;
+            double totalTraction = 0;
+            for (int v = 0; v < n; v++) {
+                swinging[v] = masses[v] * Math.hypot(oldForceX[v] - forceX[v], oldForceY[v] - forceY[v]);
+                totalSwinging += swinging[v];
+                totalTraction += masses[v] * Math.hypot(oldForceX[v] + forceX[v], oldForceY[v] + forceY[v]) / 2;
+            }
+            if (totalSwinging == 0) {
+                break; // nothing moves
+            }
+            double estimatedJitter = 0.05 * Math.sqrt(n);
+            double jitter = JITTER_TOLERANCE * Math.max(Math.sqrt(estimatedJitter),
+                    Math.min(10, estimatedJitter * totalTraction / ((double) n * n)));
+            if (totalSwinging / totalTraction > 2) {
+                if (speedEfficiency > MIN_SPEED_EFFICIENCY) {
+                    speedEfficiency *= 0.5;
+                }
+                jitter = Math.max(jitter, JITTER_TOLERANCE);
+            }
+            double targetSpeed = jitter * speedEfficiency * totalTraction / totalSwinging;
+            if (totalSwinging > jitter * totalTraction) {
+                if (speedEfficiency > MIN_SPEED_EFFICIENCY) {
+                    speedEfficiency *= 0.7;
+                }
+            } else if (speed < 1000) {
+                speedEfficiency *= 1.3;
+            }
+            speed += Math.min(targetSpeed - speed, MAX_RISE * speed);
+
+            for (int v = 0; v < n; v++) {
+                double factor = speed / (1 + Math.sqrt(speed * swinging[v]));
+                px[v] += forceX[v] * factor;
+                py[v] += forceY[v] * factor;
+            }
+        }
+        x = px;
+        y = py;
+        return this;
+    }
+
+    /**
+     * Returns the x coordinate of each vertex
+     * @return
+     */
+    public double[] getX() {
+        compute();
+        return x.clone();
+    }
+
+    /**
+     * Returns the y coordinate of each vertex
+     * @return
+     */
+    public double[] getY() {
+        compute();
+        return y.clone();
+    }
+
+    /**
+     * Returns the positions scaled uniformly and centered to fit in a box, such as a window
+     * or an image, with y increasing downward as on screen
+     * @param width
+     * @param height
+     * @param margin space left on each side
+     * @return [vertex]{x, y}
+     */
+    public double[][] getPositions(double width, double height, double margin) {
+        compute();
+        int n = graph.size();
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int v = 0; v < n; v++) {
+            minX = Math.min(minX, x[v]);
+            maxX = Math.max(maxX, x[v]);
+            minY = Math.min(minY, y[v]);
+            maxY = Math.max(maxY, y[v]);
+        }
+        double spanX = Math.max(maxX - minX, 1e-9);
+        double spanY = Math.max(maxY - minY, 1e-9);
+        double scale = Math.min((width - 2 * margin) / spanX, (height - 2 * margin) / spanY);
+        double offsetX = (width - scale * spanX) / 2;
+        double offsetY = (height - scale * spanY) / 2;
+        double[][] positions = new double[n][2];
+        for (int v = 0; v < n; v++) {
+            positions[v][0] = offsetX + scale * (x[v] - minX);
+            positions[v][1] = offsetY + scale * (maxY - y[v]);
+        }
+        return positions;
+    }
+
+    /**
+     * Logs the coordinates in Gephi's node table format, one character per line
+     * @param logger
+     * @return the logger
+     */
+    public Logger toCsvLog(Logger logger) {
+        compute();
+        logger.log(NetworkCharacter.ID + ",X,Y");
+        for (int v = 0; v < graph.size(); v++) {
+            logger.log(graph.getName(v) + "," + x[v] + "," + y[v]);
+        }
+        return logger;
+    }
+
+    /**
+     * Adds the repulsion, gravity and attraction on one vertex
+     */
+    private void accumulate(QuadTree tree, double[] px, double[] py, double[] forceX, double[] forceY,
+                            int v, int[] stack) {
+        double vx = px[v];
+        double vy = py[v];
+        double fx = 0;
+        double fy = 0;
+        double repulsion = scalingRatio * masses[v];
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int cell = stack[--top];
+            int slot = tree.slots[v];
+            boolean inside = slot >= tree.from[cell] && slot < tree.to[cell];
+            if (tree.firstChild[cell] < 0) {
+                // a leaf, which repels exactly
+                for (int i = tree.from[cell]; i < tree.to[cell]; i++) {
+                    int u = tree.order[i];
+                    double dx = vx - px[u];
+                    double dy = vy - py[u];
+                    double squared = dx * dx + dy * dy;
+                    if (u != v && squared > 0) {
+                        double factor = repulsion * masses[u] / squared;
+                        fx += dx * factor;
+                        fy += dy * factor;
+                    }
+                }
+                continue;
+            }
+            double dx = vx - tree.centerX[cell];
+            double dy = vy - tree.centerY[cell];
+            double squared = dx * dx + dy * dy;
+            if (!inside && tree.size[cell] * tree.size[cell] < theta * theta * squared) {
+                // far enough away to act as one mass
+                double factor = repulsion * tree.mass[cell] / squared;
+                fx += dx * factor;
+                fy += dy * factor;
+            } else {
+                for (int c = tree.firstChild[cell]; c < tree.firstChild[cell] + tree.childCount[cell]; c++) {
+                    stack[top++] = c;
+                }
+            }
+        }
+
+        double distance = Math.hypot(vx, vy);
+        if (distance > 0) {
+            // Gephi's gravity is not scaled, so scalingRatio only trades repulsion against attraction
+            double factor = masses[v] * gravity / distance;
+            fx -= vx * factor;
+            fy -= vy * factor;
+        }
+
+        // each edge is stored at both ends, so each end pulls itself toward the other
+        int[] offsets = graph.getOffsets();
+        int[] neighbors = graph.getNeighbors();
+        double[] weights = graph.getWeights();
+        for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+            int u = neighbors[k];
+            fx -= (vx - px[u]) * weights[k];
+            fy -= (vy - py[u]) * weights[k];
+        }
+
+        forceX[v] = fx;
+        forceY[v] = fy;
+    }
+
+    /**
+     * A quadtree over the vertices, rebuilt in place each iteration. The vertices are partitioned so that
+     * each cell holds a contiguous range of order, which also tells whether a vertex is inside a cell.
+     */
+    private class QuadTree {
+        private final int[] order;
+        private final int[] slots; // the position of each vertex in order
+        private int cellCount = 0;
+        private int[] from = new int[0];
+        private int[] to = new int[0];
+        private int[] firstChild = new int[0]; // children are contiguous, or -1 for a leaf
+        private int[] childCount = new int[0];
+        private double[] size = new double[0];
+        private double[] mass = new double[0];
+        private double[] centerX = new double[0];
+        private double[] centerY = new double[0];
+        private int depth = 0;
+
+        QuadTree(int n) {
+            order = new int[n];
+            slots = new int[n];
+        }
+
+        void build(double[] px, double[] py) {
+            int n = order.length;
+            double minX = Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            for (int v = 0; v < n; v++) {
+                order[v] = v;
+                minX = Math.min(minX, px[v]);
+                maxX = Math.max(maxX, px[v]);
+                minY = Math.min(minY, py[v]);
+                maxY = Math.max(maxY, py[v]);
+            }
+            cellCount = 0;
+            depth = 0;
+            ensureCapacity(1);
+            cellCount = 1;
+            double side = n == 0 ? 0 : Math.max(maxX - minX, maxY - minY);
+            split(0, 0, n, minX, minY, side, px, py, 0);
+            for (int i = 0; i < n; i++) {
+                slots[order[i]] = i;
+            }
+        }
+
+        /**
+         * Fills in the cell for order[start, end), within the square at (left, bottom), and its subtree
+         */
+        private void split(int cell, int start, int end, double left, double bottom, double side,
+                           double[] px, double[] py, int level) {
+            from[cell] = start;
+            to[cell] = end;
+            size[cell] = side;
+            firstChild[cell] = -1;
+            childCount[cell] = 0;
+            depth = Math.max(depth, level + 1);
+            if (end - start > 1 && level < MAX_DEPTH) {
+                double half = side / 2;
+                double midX = left + half;
+                double midY = bottom + half;
+                // partition into bottom and top, then each of those into left and right
+                int middle = partition(start, end, py, midY);
+                int[] bounds = {start, partition(start, middle, px, midX), middle, partition(middle, end, px, midX), end};
+                int children = 0;
+                for (int q = 0; q < 4; q++) {
+                    if (bounds[q + 1] > bounds[q]) {
+                        children++;
+                    }
+                }
+                int first = cellCount;
+                ensureCapacity(cellCount + children);
+                cellCount += children;
+                firstChild[cell] = first;
+                childCount[cell] = children;
+                int c = first;
+                for (int q = 0; q < 4; q++) {
+                    if (bounds[q + 1] > bounds[q]) {
+                        split(c++, bounds[q], bounds[q + 1], (q & 1) == 0 ? left : midX,
+                                q < 2 ? bottom : midY, half, px, py, level + 1);
+                    }
+                }
+            }
+            double m = 0;
+            double sx = 0;
+            double sy = 0;
+            for (int i = start; i < end; i++) {
+                int v = order[i];
+                m += masses[v];
+                sx += masses[v] * px[v];
+                sy += masses[v] * py[v];
+            }
+            mass[cell] = m;
+            centerX[cell] = m > 0 ? sx / m : left;
+            centerY[cell] = m > 0 ? sy / m : bottom;
+        }
+
+        /**
+         * Moves the vertices of order[start, end) below the split value to the front
+         * @return the first position at or above it
+         */
+        private int partition(int start, int end, double[] coordinates, double split) {
+            int i = start;
+            for (int j = start; j < end; j++) {
+                if (coordinates[order[j]] < split) {
+                    int temp = order[i];
+                    order[i] = order[j];
+                    order[j] = temp;
+                    i++;
+                }
+            }
+            return i;
+        }
+
+        private void ensureCapacity(int cells) {
+            if (cells > from.length) {
+                int capacity = Math.max(cells, 2 * from.length + 16);
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                childCount = Arrays.copyOf(childCount, capacity);
+                size = Arrays.copyOf(size, capacity);
+                mass = Arrays.copyOf(mass, capacity);
+                centerX = Arrays.copyOf(centerX, capacity);
+                centerY = Arrays.copyOf(centerY, capacity);
+            }
+        }
+    }
+
+    private class ForceTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final QuadTree tree;
+        private final double[] px;
+        private final double[] py;
+        private final double[] forceX;
+        private final double[] forceY;
+        private final int from;
+        private final int to;
+
+        ForceTask(QuadTree tree, double[] px, double[] py, double[] forceX, double[] forceY, int from, int to) {
+            this.tree = tree;
+            this.px = px;
+            this.py = py;
+            this.forceX = forceX;
+            this.forceY = forceY;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= VERTICES_PER_TASK) {
+                // every cell pushes at most four children, and pops one, per level
+                int[] stack = new int[3 * tree.depth + 4];
+                for (int v = from; v < to; v++) {
+                    accumulate(tree, px, py, forceX, forceY, v, stack);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ForceTask(tree, px, py, forceX, forceY, from, middle),
+                        new ForceTask(tree, px, py, forceX, forceY, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package edu.macalester.mscs.centrality;
+
+/**
+ * HITS hub and authority scores by power iteration on the SparseKernel.
+ *
+ * Authorities are pointed to by good hubs, and hubs point to good authorities, so that
+ * a = A^T h and h = A a. Since the network is undirected, A is symmetric, and hubs and authorities
+ * agree once the iteration converges, but both are kept so the class reads like the definition.
+ * As in EigenvectorCentrality, each authority step adds the previous authorities, which has the same
+ * fixed point but converges on bipartite parts of the network. Both vectors are scaled to sum to 1.
+ */
+public class Hits {
+
+    private final SparseKernel kernel;
+    private final double tolerance;
+    private final int maxIterations;
+    private int iterations = 0;
+
+    private double[] authority = null;
+    private double[] hub = null;
+
+    /**
+     * Unweighted HITS, as Gephi computes it
+     * @param graph
+     */
+    public Hits(CsrGraph graph) {
+        this(new SparseKernel(graph, false), PageRank.DEFAULT_TOLERANCE, PageRank.DEFAULT_MAX_ITERATIONS);
+    }
+
+    public Hits(SparseKernel kernel, double tolerance, int maxIterations) {
+        this.kernel = kernel;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Computes the scores, if they have not been computed already
+     * @return this
+     */
+    public synchronized Hits compute() {
+        if (authority == null) {
+            int n = kernel.size();
+            double[] a = PageRank.initialVector(null, n);
+            double[] h = new double[n];
+            double[] next = new double[n];
+            iterations = 0;
+            double delta = n == 0 ? 0 : Double.MAX_VALUE;
+            while (delta > tolerance && iterations < maxIterations) {
+                kernel.multiply(a, h);
+                scaleToSum(h);
+                kernel.multiply(h, next);
+                for (int i = 0; i < n; i++) {
+                    next[i] += a[i];
+                }
+                scaleToSum(next);
+                delta = 0;
+                for (int i = 0; i < n; i++) {
+                    delta += Math.abs(next[i] - a[i]);
+                }
+                double[] temp = a;
+                a = next;
+                next = temp;
+                iterations++;
+            }
+            kernel.multiply(a, h);
+            scaleToSum(h);
+            authority = a;
+            hub = h;
+        }
+        return this;
+    }
+
+    public double[] getAuthority() {
+        compute();
+        return authority;
+    }
+
+    public double[] getHub() {
+        compute();
+        return hub;
+    }
+
+    /**
+     * Returns the number of iterations taken by compute
+     * @return
+     */
+    public int getIterations() {
+        compute();
+        return iterations;
+    }
+
+    private static void scaleToSum(double[] vector) {
+        double sum = 0;
+        for (double value : vector) {
+            sum += value;
+        }
+        if (sum > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= sum;
+            }
+        }
+    }
+}
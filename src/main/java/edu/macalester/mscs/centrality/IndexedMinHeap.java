@@ -0,0 +1,113 @@
+package edu.macalester.mscs.centrality;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of vertex indices keyed by double priorities, with decrease-key,
+ * for Dijkstra's algorithm. Everything is kept in primitive arrays so that a heap can
+ * be reused for many sources without allocating.
+ */
+class IndexedMinHeap {
+
+    private final int[] heap;
+    private final int[] positions; // position of each vertex in heap, or -1
+    private final double[] keys;
+    private int size = 0;
+
+    IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.positions = new int[capacity];
+        this.keys = new double[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int vertex) {
+        return positions[vertex] >= 0;
+    }
+
+    /**
+     * Inserts the vertex, or lowers its key if it is already in the heap with a larger key
+     * @param vertex
+     * @param key
+     */
+    void insertOrDecrease(int vertex, double key) {
+        if (positions[vertex] < 0) {
+            heap[size] = vertex;
+            positions[vertex] = size;
+            keys[vertex] = key;
+            size++;
+            siftUp(size - 1);
+        } else if (key < keys[vertex]) {
+            keys[vertex] = key;
+            siftUp(positions[vertex]);
+        }
+    }
+
+    /**
+     * Removes and returns the vertex with the smallest key
+     * @return
+     */
+    int poll() {
+        int min = heap[0];
+        positions[min] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    /**
+     * Empties the heap, so it can be reused
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int index) {
+        int vertex = heap[index];
+        double key = keys[vertex];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (keys[heap[parent]] <= key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            positions[heap[index]] = index;
+            index = parent;
+        }
+        heap[index] = vertex;
+        positions[vertex] = index;
+    }
+
+    private void siftDown(int index) {
+        int vertex = heap[index];
+        double key = keys[vertex];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            if (keys[heap[child]] >= key) {
+                break;
+            }
+            heap[index] = heap[child];
+            positions[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = vertex;
+        positions[vertex] = index;
+    }
+}
@@ -0,0 +1,141 @@
+package edu.macalester.mscs.centrality;
+
+import java.util.Random;
+
+/**
+ * Weighted asynchronous label propagation, a quick community finder for previews.
+ *
+ * Every vertex starts with its own label, and in each sweep the vertices, in a random order, take
+ * the label with the most edge weight among their neighbors, updating in place so that later vertices
+ * in the sweep see the new labels. Ties are broken at random, preferring the current label.
+ * It stops when a sweep changes nothing. Each sweep is linear in the number of edges, and our networks
+ * settle in a handful of sweeps, so this takes a few milliseconds where Louvain takes tens.
+ * The visiting order and the tie breaks come from a seeded generator, so the result is reproducible.
+ */
+public class LabelPropagation {
+
+    public static final long DEFAULT_SEED = 42;
+    public static final int DEFAULT_MAX_SWEEPS = 100;
+
+    private final CsrGraph graph;
+    private final long seed;
+    private final int maxSweeps;
+
+    private int[] communities = null;
+    private int sweeps = 0;
+
+    public LabelPropagation(CsrGraph graph) {
+        this(graph, DEFAULT_SEED, DEFAULT_MAX_SWEEPS);
+    }
+
+    public LabelPropagation(CsrGraph graph, long seed, int maxSweeps) {
+        this.graph = graph;
+        this.seed = seed;
+        this.maxSweeps = maxSweeps;
+    }
+
+    /**
+     * Propagates the labels, if they have not been propagated already
+     * @return this
+     */
+    public synchronized LabelPropagation compute() {
+        if (communities == null) {
+            int n = graph.size();
+            int[] offsets = graph.getOffsets();
+            int[] neighbors = graph.getNeighbors();
+            double[] weights = graph.getWeights();
+            Random random = new Random(seed);
+
+            int[] labels = new int[n];
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) {
+                labels[i] = i;
+                order[i] = i;
+            }
+            double[] labelWeights = new double[n];
+            int[] seen = new int[n];
+
+            boolean changed = true;
+            sweeps = 0;
+            while (changed && sweeps < maxSweeps) {
+                changed = false;
+                shuffle(order, random);
+                for (int v : order) {
+                    if (offsets[v] == offsets[v + 1]) {
+                        continue;
+                    }
+                    int count = 0;
+                    for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                        int label = labels[neighbors[k]];
+                        if (labelWeights[label] == 0) {
+                            seen[count++] = label;
+                        }
+                        labelWeights[label] += weights[k];
+                    }
+                    int best = labels[v];
+                    double bestWeight = labelWeights[best];
+                    int ties = 1;
+                    for (int i = 0; i < count; i++) {
+                        int label = seen[i];
+                        double weight = labelWeights[label];
+                        if (label == labels[v]) {
+                            continue;
+                        }
+                        if (weight > bestWeight) {
+                            best = label;
+                            bestWeight = weight;
+                            ties = 1;
+                        } else if (weight == bestWeight && best != labels[v] && random.nextInt(++ties) == 0) {
+                            best = label; // reservoir sampling among the tied labels
+                        }
+                    }
+                    for (int i = 0; i < count; i++) {
+                        labelWeights[seen[i]] = 0;
+                    }
+                    if (best != labels[v]) {
+                        labels[v] = best;
+                        changed = true;
+                    }
+                }
+                sweeps++;
+            }
+            communities = Louvain.orderBySize(graph, labels);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the community of each vertex, numbered from 0 in decreasing order of total weighted degree
+     * @return
+     */
+    public int[] getCommunities() {
+        compute();
+        return communities.clone();
+    }
+
+    /**
+     * Returns the names of the vertices grouped by community, as Louvain.getOrderedCharacters() does
+     * @return
+     */
+    public String[] getOrderedCharacters() {
+        return Louvain.orderByCommunity(graph, getCommunities());
+    }
+
+    /**
+     * Returns the number of sweeps taken by compute
+     * @return
+     */
+    public int getSweeps() {
+        compute();
+        return sweeps;
+    }
+
+    private static void shuffle(int[] array, Random random) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = array[i];
+            array[i] = array[j];
+            array[j] = temp;
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package edu.macalester.mscs.centrality;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Weighted Louvain community detection, with a resolution parameter, which gives the Modularity Class
+ * that we used to get from Gephi and the community ordering of the characters.
+ *
+ * The local moving phase is parallel, following Lu, Halappanavar and Kalyanaraman: the vertices are
+ * colored so that no two neighbors share a color, and each color is moved in parallel against the
+ * community totals from before that color, which are then updated with all of its moves at once.
+ * Vertices of the same color do not see each other, so their moves never conflict, and the result
+ * does not depend on the number of threads. The communities are then merged into single vertices,
+ * and both phases repeat until nothing moves.
+ *
+ * Higher resolutions give more and smaller communities; 1 is standard modularity, as in Gephi.
+ */
+public class Louvain {
+
+    public static final double DEFAULT_RESOLUTION = 1.0;
+
+    // smallest modularity gain that counts as an improvement in a sweep
+    private static final double MIN_GAIN = 1e-7;
+    private static final int VERTICES_PER_TASK = 256;
+
+    private final CsrGraph graph;
+    private final double resolution;
+
+    private int[] communities = null;
+    private double modularity = 0;
+
+    public Louvain(CsrGraph graph) {
+        this(graph, DEFAULT_RESOLUTION);
+    }
+
+    public Louvain(CsrGraph graph, double resolution) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Invalid resolution: " + resolution);
+        }
+        this.graph = graph;
+        this.resolution = resolution;
+    }
+
+    /**
+     * Finds the communities, if they have not been found already
+     * @return this
+     */
+    public synchronized Louvain compute() {
+        if (communities == null) {
+            int n = graph.size();
+            int[] membership = new int[n];
+            for (int i = 0; i < n; i++) {
+                membership[i] = i;
+            }
+            Level level = new Level(graph.getOffsets(), graph.getNeighbors(), graph.getWeights(), new double[n]);
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            while (true) {
+                int[] moved = level.moveLocally(pool);
+                if (moved == null) {
+                    break;
+                }
+                int count = renumber(moved);
+                if (count == level.n) {
+                    break; // vertices only swapped communities
+                }
+                for (int i = 0; i < n; i++) {
+                    membership[i] = moved[membership[i]];
+                }
+                level = level.aggregate(moved, count);
+            }
+            communities = orderBySize(graph, membership);
+            modularity = getModularity(communities);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the community of each vertex, numbered from 0 in decreasing order of total weighted degree
+     * @return
+     */
+    public int[] getCommunities() {
+        compute();
+        return communities.clone();
+    }
+
+    public int getCommunityCount() {
+        compute();
+        int count = 0;
+        for (int c : communities) {
+            count = Math.max(count, c + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the modularity of the communities, at the resolution they were found with
+     * @return
+     */
+    public double getModularity() {
+        compute();
+        return modularity;
+    }
+
+    public double getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Returns the names of the vertices grouped by community, in community order, and in decreasing
+     * order of weighted degree within each community. This is the order for the matrix JSON.
+     * @return
+     */
+    public String[] getOrderedCharacters() {
+        return orderByCommunity(graph, getCommunities());
+    }
+
+    /**
+     * Returns the names of the vertices grouped by community, in community order, and in decreasing
+     * order of weighted degree within each community
+     * @param graph
+     * @param communities
+     * @return
+     */
+    static String[] orderByCommunity(final CsrGraph graph, final int[] communities) {
+        Integer[] order = new Integer[graph.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (communities[a] != communities[b]) {
+                    return Integer.compare(communities[a], communities[b]);
+                }
+                int byDegree = Double.compare(graph.weightedDegree(b), graph.weightedDegree(a));
+                return byDegree != 0 ? byDegree : graph.getName(a).compareTo(graph.getName(b));
+            }
+        });
+        String[] names = new String[order.length];
+        for (int i = 0; i < order.length; i++) {
+            names[i] = graph.getName(order[i]);
+        }
+        return names;
+    }
+
+    /**
+     * Renumbers the communities from 0 in decreasing order of total weighted degree, breaking ties by
+     * their first vertex, so that the numbering does not depend on how they were found
+     * @param graph
+     * @param membership
+     * @return
+     */
+    static int[] orderBySize(CsrGraph graph, int[] membership) {
+        int n = membership.length;
+        final double[] totals = new double[n];
+        final int[] firsts = new int[n];
+        Arrays.fill(firsts, -1);
+        for (int i = 0; i < n; i++) {
+            totals[membership[i]] += graph.weightedDegree(i);
+            if (firsts[membership[i]] < 0) {
+                firsts[membership[i]] = i;
+            }
+        }
+        List<Integer> used = new ArrayList<>();
+        for (int c = 0; c < n; c++) {
+            if (firsts[c] >= 0) {
+                used.add(c);
+            }
+        }
+        Collections.sort(used, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int byTotal = Double.compare(totals[b], totals[a]);
+                return byTotal != 0 ? byTotal : Integer.compare(firsts[a], firsts[b]);
+            }
+        });
+        int[] numbers = new int[n];
+        for (int i = 0; i < used.size(); i++) {
+            numbers[used.get(i)] = i;
+        }
+        int[] ordered = new int[n];
+        for (int i = 0; i < n; i++) {
+            ordered[i] = numbers[membership[i]];
+        }
+        return ordered;
+    }
+
+    /**
+     * Returns the modularity of the given communities of the graph, at this resolution
+     * @param membership
+     * @return
+     */
+    public double getModularity(int[] membership) {
+        int n = graph.size();
+        int[] offsets = graph.getOffsets();
+        int[] neighbors = graph.getNeighbors();
+        double[] weights = graph.getWeights();
+        double total = 0;
+        double internal = 0;
+        double[] totals = new double[n];
+        for (int i = 0; i < n; i++) {
+            total += graph.weightedDegree(i);
+            totals[membership[i]] += graph.weightedDegree(i);
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                if (membership[neighbors[k]] == membership[i]) {
+                    internal += weights[k];
+                }
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double q = internal / total;
+        for (double t : totals) {
+            q -= resolution * (t / total) * (t / total);
+        }
+        return q;
+    }
+
+    /**
+     * Renumbers the communities in place from 0, in order of first appearance
+     * @param membership
+     * @return the number of communities
+     */
+    private static int renumber(int[] membership) {
+        int[] numbers = new int[membership.length];
+        Arrays.fill(numbers, -1);
+        int count = 0;
+        for (int i = 0; i < membership.length; i++) {
+            if (numbers[membership[i]] < 0) {
+                numbers[membership[i]] = count++;
+            }
+            membership[i] = numbers[membership[i]];
+        }
+        return count;
+    }
+
+    /**
+     * One level of the hierarchy: a weighted graph whose vertices may carry self-loops,
+     * which hold the weight inside the communities they were merged from
+     */
+    private class Level {
+
+        final int n;
+        final int[] offsets;
+        final int[] neighbors;
+        final double[] weights;
+        final double[] selfLoops;
+        final double[] degrees; // weighted degrees, with self-loops counted twice
+        final double total; // twice the total weight
+
+        Level(int[] offsets, int[] neighbors, double[] weights, double[] selfLoops) {
+            this.n = selfLoops.length;
+            this.offsets = offsets;
+            this.neighbors = neighbors;
+            this.weights = weights;
+            this.selfLoops = selfLoops;
+            this.degrees = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                double degree = 2 * selfLoops[i];
+                for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                    degree += weights[k];
+                }
+                degrees[i] = degree;
+                sum += degree;
+            }
+            this.total = sum;
+        }
+
+        /**
+         * Moves vertices between communities, one color at a time, until a sweep gains too little.
+         * A sweep that lowers the modularity is redone one vertex at a time.
+         * @param pool
+         * @return the community of each vertex, or null if no vertex moved
+         */
+        int[] moveLocally(ForkJoinPool pool) {
+            if (total == 0) {
+                return null;
+            }
+            int[][] colors = color();
+            final int[] community = new int[n];
+            final double[] totals = degrees.clone();
+            for (int i = 0; i < n; i++) {
+                community[i] = i;
+            }
+            final int[] targets = new int[n];
+            boolean movedAny = false;
+            double quality = quality(community, totals);
+            while (true) {
+                int[] previous = community.clone();
+                double[] previousTotals = totals.clone();
+                boolean moved = false;
+                for (final int[] vertices : colors) {
+                    final double[] snapshot = totals.clone();
+                    if (vertices.length > VERTICES_PER_TASK) {
+                        pool.invoke(new MoveTask(vertices, 0, vertices.length, community, snapshot, targets));
+                    } else {
+                        new MoveTask(vertices, 0, vertices.length, community, snapshot, targets).compute();
+                    }
+                    for (int v : vertices) {
+                        if (targets[v] != community[v]) {
+                            totals[community[v]] -= degrees[v];
+                            totals[targets[v]] += degrees[v];
+                            community[v] = targets[v];
+                            moved = true;
+                        }
+                    }
+                }
+                double next = quality(community, totals);
+                if (next < quality) {
+                    // moves made together in one color can undo each other's gains, so redo the sweep
+                    // with each move seeing the ones before it, which can only raise the modularity
+                    System.arraycopy(previous, 0, community, 0, n);
+                    System.arraycopy(previousTotals, 0, totals, 0, n);
+                    moved = moveSequentially(colors, community, totals);
+                    next = quality(community, totals);
+                }
+                movedAny |= moved;
+                if (!moved || next - quality < MIN_GAIN) {
+                    break;
+                }
+                quality = next;
+            }
+            return movedAny ? community : null;
+        }
+
+        /**
+         * Moves each vertex in turn to its best community, updating the totals as it goes
+         * @return whether any vertex moved
+         */
+        boolean moveSequentially(int[][] colors, int[] community, double[] totals) {
+            double[] linkWeights = new double[n];
+            int[] linked = new int[n];
+            boolean moved = false;
+            for (int[] vertices : colors) {
+                for (int v : vertices) {
+                    int target = bestCommunity(v, community, totals, linkWeights, linked);
+                    if (target != community[v]) {
+                        totals[community[v]] -= degrees[v];
+                        totals[target] += degrees[v];
+                        community[v] = target;
+                        moved = true;
+                    }
+                }
+            }
+            return moved;
+        }
+
+        /**
+         * Finds the best community for v, given the community totals
+         */
+        int bestCommunity(int v, int[] community, double[] totals, double[] linkWeights, int[] linked) {
+            int current = community[v];
+            int count = 0;
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                int c = community[neighbors[k]];
+                if (linkWeights[c] == 0) {
+                    linked[count++] = c;
+                }
+                linkWeights[c] += weights[k];
+            }
+            double scale = resolution * degrees[v] / total;
+            int best = current;
+            double bestGain = linkWeights[current] - scale * (totals[current] - degrees[v]);
+            for (int i = 0; i < count; i++) {
+                int c = linked[i];
+                if (c != current) {
+                    double gain = linkWeights[c] - scale * totals[c];
+                    if (gain > bestGain + MIN_GAIN || (gain > bestGain - MIN_GAIN && best != current && c < best)) {
+                        best = c;
+                        bestGain = gain;
+                    }
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                linkWeights[linked[i]] = 0;
+            }
+            return best;
+        }
+
+        /**
+         * Greedily colors the vertices so that neighbors have different colors
+         * @return the vertices of each color
+         */
+        int[][] color() {
+            int[] colors = new int[n];
+            Arrays.fill(colors, -1);
+            boolean[] taken = new boolean[n + 1];
+            int colorCount = 0;
+            int[] sizes = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                    if (colors[neighbors[k]] >= 0) {
+                        taken[colors[neighbors[k]]] = true;
+                    }
+                }
+                int c = 0;
+                while (taken[c]) {
+                    c++;
+                }
+                colors[v] = c;
+                sizes[c]++;
+                colorCount = Math.max(colorCount, c + 1);
+                for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                    if (colors[neighbors[k]] >= 0) {
+                        taken[colors[neighbors[k]]] = false;
+                    }
+                }
+            }
+            int[][] classes = new int[colorCount][];
+            for (int c = 0; c < colorCount; c++) {
+                classes[c] = new int[sizes[c]];
+                sizes[c] = 0;
+            }
+            for (int v = 0; v < n; v++) {
+                classes[colors[v]][sizes[colors[v]]++] = v;
+            }
+            return classes;
+        }
+
+        /**
+         * Returns the modularity of the communities of this level
+         */
+        double quality(int[] community, double[] totals) {
+            double internal = 0;
+            for (int i = 0; i < n; i++) {
+                internal += 2 * selfLoops[i];
+                for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                    if (community[neighbors[k]] == community[i]) {
+                        internal += weights[k];
+                    }
+                }
+            }
+            double q = internal / total;
+            for (int c = 0; c < n; c++) {
+                q -= resolution * (totals[c] / total) * (totals[c] / total);
+            }
+            return q;
+        }
+
+        /**
+         * Merges every community into a single vertex
+         * @param community numbered from 0 to count - 1
+         * @param count
+         * @return
+         */
+        Level aggregate(int[] community, int count) {
+            double[] loops = new double[count];
+            double[][] rows = new double[count][];
+            List<List<Integer>> members = new ArrayList<>();
+            for (int c = 0; c < count; c++) {
+                members.add(new ArrayList<Integer>());
+            }
+            for (int i = 0; i < n; i++) {
+                members.get(community[i]).add(i);
+                loops[community[i]] += selfLoops[i];
+            }
+            int[] newOffsets = new int[count + 1];
+            int[][] newNeighbors = new int[count][];
+            double[] linkWeights = new double[count];
+            int[] linked = new int[count];
+            for (int c = 0; c < count; c++) {
+                int linkCount = 0;
+                for (int i : members.get(c)) {
+                    for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                        int d = community[neighbors[k]];
+                        if (d == c) {
+                            loops[c] += weights[k] / 2; // seen from both ends
+                        } else {
+                            if (linkWeights[d] == 0) {
+                                linked[linkCount++] = d;
+                            }
+                            linkWeights[d] += weights[k];
+                        }
+                    }
+                }
+                Arrays.sort(linked, 0, linkCount);
+                newNeighbors[c] = Arrays.copyOf(linked, linkCount);
+                rows[c] = new double[linkCount];
+                for (int i = 0; i < linkCount; i++) {
+                    rows[c][i] = linkWeights[linked[i]];
+                    linkWeights[linked[i]] = 0;
+                }
+                newOffsets[c + 1] = newOffsets[c] + linkCount;
+            }
+            int[] flatNeighbors = new int[newOffsets[count]];
+            double[] flatWeights = new double[newOffsets[count]];
+            for (int c = 0; c < count; c++) {
+                System.arraycopy(newNeighbors[c], 0, flatNeighbors, newOffsets[c], newNeighbors[c].length);
+                System.arraycopy(rows[c], 0, flatWeights, newOffsets[c], rows[c].length);
+            }
+            return new Level(newOffsets, flatNeighbors, flatWeights, loops);
+        }
+
+        private class MoveTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final int[] vertices;
+            private final int from;
+            private final int to;
+            private final int[] community;
+            private final double[] totals;
+            private final int[] targets;
+
+            MoveTask(int[] vertices, int from, int to, int[] community, double[] totals, int[] targets) {
+                this.vertices = vertices;
+                this.from = from;
+                this.to = to;
+                this.community = community;
+                this.totals = totals;
+                this.targets = targets;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= VERTICES_PER_TASK) {
+                    double[] linkWeights = new double[n];
+                    int[] linked = new int[n];
+                    for (int i = from; i < to; i++) {
+                        int v = vertices[i];
+                        targets[v] = bestCommunity(v, community, totals, linkWeights, linked);
+                    }
+                } else {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new MoveTask(vertices, from, middle, community, totals, targets),
+                            new MoveTask(vertices, middle, to, community, totals, targets));
+                }
+            }
+        }
+    }
+}
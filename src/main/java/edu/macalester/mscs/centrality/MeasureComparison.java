@@ -0,0 +1,375 @@
+package edu.macalester.mscs.centrality;
+
+import edu.macalester.mscs.utils.Logger;
+
+import java.io.File;
+import java.text.DecimalFormat;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the centrality measures of the node data, by Kendall's tau-b, Spearman's rho and the
+ * overlap of the top k characters: every pair of measures within each dataset, and every pair of
+ * datasets for each measure, over the characters that the two datasets share.
+ *
+ * Measures where smaller values are more central, closeness and eccentricity, are negated first,
+ * so that agreeing measures always correlate positively. Modularity class is a label rather than
+ * a measure and is left out, as is the betweenness error. The comparisons are independent, so
+ * they run in parallel, one task per dataset and one per measure.
+ */
+public class MeasureComparison {
+
+    public static final String KENDALL = "kendall";
+    public static final String SPEARMAN = "spearman";
+    public static final String TOP_K = "top-k";
+    public static final String[] STATISTICS = {KENDALL, SPEARMAN, TOP_K};
+
+    public static final int DEFAULT_K = 20;
+
+    public static final String DEFAULT_MEASURES_FILE_NAME = "src/main/resources/data/output/centrality/GoT#NUM-#STATISTIC.csv";
+    public static final String DEFAULT_BOOKS_FILE_NAME = "src/main/resources/data/output/centrality/GoT-books-#STATISTIC.csv";
+
+    private static final Set<String> REVERSED = new HashSet<>(Arrays.asList(
+            NetworkCharacter.CLOSENESS_CENTRALITY, NetworkCharacter.ECCENTRICITY));
+    private static final Set<String> EXCLUDED = new HashSet<>(Arrays.asList(
+            NetworkCharacter.MODULARITY_CLASS, NetworkCharacter.BETWEENNESS_ERROR));
+
+    private final List<NodeTable> tables;
+    private final List<String> labels;
+    private final List<String> measures;
+    private final int k;
+
+    private double[][][][] measureStatistics = null; // [dataset][statistic][measure][measure]
+    private double[][][] bookStatistics = null; // [statistic][measure][dataset pair]
+
+    /**
+     * Compares the numeric columns that every table has, other than modularity class and the betweenness error
+     * @param tables
+     * @param labels a name for each table
+     */
+    public MeasureComparison(List<NodeTable> tables, List<String> labels) {
+        this(tables, labels, getSharedMeasures(tables), DEFAULT_K);
+    }
+
+    public MeasureComparison(List<NodeTable> tables, List<String> labels, List<String> measures, int k) {
+        if (tables.size() != labels.size()) {
+            throw new IllegalArgumentException("Got " + tables.size() + " tables but " + labels.size() + " labels");
+        }
+        this.tables = new ArrayList<>(tables);
+        this.labels = new ArrayList<>(labels);
+        this.measures = new ArrayList<>(measures);
+        this.k = k;
+    }
+
+    /**
+     * Compares the node data written by NodeDataMaker for every book
+     * @param args
+     */
+    public static void main(String[] args) {
+        String[] dataFileNames = new String[CentraltyTableMaker.BOOK_NUMS.length];
+        for (int i = 0; i < CentraltyTableMaker.BOOK_NUMS.length; i++) {
+            dataFileNames[i] = NodeDataMaker.DEFAULT_OUTPUT_FILE_NAME.replace("#NUM", CentraltyTableMaker.BOOK_NUMS[i]);
+        }
+        long start = System.currentTimeMillis();
+        compareMeasures(CentraltyTableMaker.BOOK_NUMS, dataFileNames);
+        System.out.println("Compared the measures in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Reads the node data files and writes the comparisons to the default files
+     * @param bookNums
+     * @param dataFileNames
+     */
+    public static void compareMeasures(String[] bookNums, String[] dataFileNames) {
+        List<NodeTable> tables = new ArrayList<>();
+        for (String dataFileName : dataFileNames) {
+            tables.add(NodeTable.read(dataFileName));
+        }
+        MeasureComparison comparison = new MeasureComparison(tables, Arrays.asList(bookNums));
+        for (String statistic : STATISTICS) {
+            for (int i = 0; i < bookNums.length; i++) {
+                comparison.writeCsv(comparison.toMeasuresCsvLog(i, statistic, new Logger()),
+                        DEFAULT_MEASURES_FILE_NAME.replace("#NUM", bookNums[i]).replace("#STATISTIC", statistic));
+            }
+            comparison.writeCsv(comparison.toBooksCsvLog(statistic, new Logger()),
+                    DEFAULT_BOOKS_FILE_NAME.replace("#STATISTIC", statistic));
+        }
+    }
+
+    /**
+     * Returns the numeric columns that every table has, in the order of the first, other than
+     * modularity class and the betweenness error
+     * @param tables
+     * @return
+     */
+    public static List<String> getSharedMeasures(List<NodeTable> tables) {
+        List<String> measures = new ArrayList<>();
+        if (tables.isEmpty()) {
+            return measures;
+        }
+        for (String columnName : tables.get(0).getColumnNames()) {
+            if (EXCLUDED.contains(columnName)) {
+                continue;
+            }
+            boolean shared = true;
+            for (NodeTable table : tables) {
+                shared &= table.hasColumn(columnName) && table.getType(columnName) != NodeTable.Type.STRING;
+            }
+            if (shared) {
+                measures.add(columnName);
+            }
+        }
+        return measures;
+    }
+
+    /**
+     * Computes every comparison, if they have not been computed already
+     * @return this
+     */
+    public synchronized MeasureComparison compute() {
+        if (measureStatistics == null) {
+            List<Callable<double[][][]>> datasetTasks = new ArrayList<>();
+            for (final NodeTable table : tables) {
+                datasetTasks.add(new Callable<double[][][]>() {
+                    @Override
+                    public double[][][] call() {
+                        return compareMeasures(table);
+                    }
+                });
+            }
+            List<Callable<double[][]>> measureTasks = new ArrayList<>();
+            for (final String measure : measures) {
+                measureTasks.add(new Callable<double[][]>() {
+                    @Override
+                    public double[][] call() {
+                        return compareBooks(measure);
+                    }
+                });
+            }
+
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            try {
+                List<Future<double[][][]>> datasetResults = new ArrayList<>();
+                for (Callable<double[][][]> task : datasetTasks) {
+                    datasetResults.add(pool.submit(task));
+                }
+                List<Future<double[][]>> measureResults = pool.invokeAll(measureTasks);
+
+                double[][][][] byDataset = new double[tables.size()][][][];
+                for (int d = 0; d < byDataset.length; d++) {
+                    byDataset[d] = datasetResults.get(d).get();
+                }
+                double[][][] byMeasure = new double[STATISTICS.length][measures.size()][];
+                for (int m = 0; m < measures.size(); m++) {
+                    double[][] result = measureResults.get(m).get();
+                    for (int s = 0; s < STATISTICS.length; s++) {
+                        byMeasure[s][m] = result[s];
+                    }
+                }
+                measureStatistics = byDataset;
+                bookStatistics = byMeasure;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error comparing measures", e.getCause());
+            }
+        }
+        return this;
+    }
+
+    public List<String> getMeasures() {
+        return Collections.unmodifiableList(measures);
+    }
+
+    /**
+     * Returns the statistic for every pair of measures in the dataset
+     * @param dataset
+     * @param statistic one of STATISTICS
+     * @return [measure][measure]
+     */
+    public double[][] getMeasureMatrix(int dataset, String statistic) {
+        compute();
+        return measureStatistics[dataset][statisticIndex(statistic)];
+    }
+
+    /**
+     * Returns the statistic for every pair of datasets, for the measure
+     * @param measure
+     * @param statistic one of STATISTICS
+     * @return [dataset][dataset]
+     */
+    public double[][] getBookMatrix(String measure, String statistic) {
+        compute();
+        int m = measures.indexOf(measure);
+        if (m < 0) {
+            throw new IllegalArgumentException("Not a compared measure: " + measure);
+        }
+        double[] pairs = bookStatistics[statisticIndex(statistic)][m];
+        int n = tables.size();
+        double[][] matrix = new double[n][n];
+        int p = 0;
+        for (int a = 0; a < n; a++) {
+            matrix[a][a] = 1;
+            for (int b = a + 1; b < n; b++) {
+                matrix[a][b] = pairs[p];
+                matrix[b][a] = pairs[p];
+                p++;
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Logs the measure by measure matrix of the statistic for the dataset
+     * @param dataset
+     * @param statistic
+     * @param logger
+     * @return the logger
+     */
+    public Logger toMeasuresCsvLog(int dataset, String statistic, Logger logger) {
+        double[][] matrix = getMeasureMatrix(dataset, statistic);
+        logger.log(headerLine("Measure", measures));
+        for (int a = 0; a < measures.size(); a++) {
+            logger.log(valueLine(measures.get(a), matrix[a]));
+        }
+        return logger;
+    }
+
+    /**
+     * Logs the statistic for every measure and pair of datasets, one row per measure
+     * @param statistic
+     * @param logger
+     * @return the logger
+     */
+    public Logger toBooksCsvLog(String statistic, Logger logger) {
+        compute();
+        List<String> pairs = new ArrayList<>();
+        for (int a = 0; a < labels.size(); a++) {
+            for (int b = a + 1; b < labels.size(); b++) {
+                pairs.add(labels.get(a) + " vs " + labels.get(b));
+            }
+        }
+        logger.log(headerLine("Measure", pairs));
+        for (int m = 0; m < measures.size(); m++) {
+            logger.log(valueLine(measures.get(m), bookStatistics[statisticIndex(statistic)][m]));
+        }
+        return logger;
+    }
+
+    private void writeCsv(Logger logger, String file) {
+        new File(file).getAbsoluteFile().getParentFile().mkdirs();
+        logger.writeLog(file);
+    }
+
+    /**
+     * Compares every pair of measures within one table
+     * @param table
+     * @return [statistic][measure][measure]
+     */
+    private double[][][] compareMeasures(NodeTable table) {
+        int count = measures.size();
+        double[][] values = new double[count][];
+        for (int m = 0; m < count; m++) {
+            values[m] = getValues(table, measures.get(m));
+        }
+        double[][][] result = new double[STATISTICS.length][count][count];
+        for (int a = 0; a < count; a++) {
+            for (int b = a; b < count; b++) {
+                double[] statistics = compare(values[a], values[b]);
+                for (int s = 0; s < STATISTICS.length; s++) {
+                    result[s][a][b] = statistics[s];
+                    result[s][b][a] = statistics[s];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compares one measure between every pair of tables, over their shared characters
+     * @param measure
+     * @return [statistic][dataset pair]
+     */
+    private double[][] compareBooks(String measure) {
+        int n = tables.size();
+        double[][] result = new double[STATISTICS.length][n * (n - 1) / 2];
+        int p = 0;
+        for (int a = 0; a < n; a++) {
+            NodeTable first = tables.get(a);
+            double[] firstValues = getValues(first, measure);
+            for (int b = a + 1; b < n; b++) {
+                NodeTable second = tables.get(b);
+                double[] secondValues = getValues(second, measure);
+                double[] x = new double[first.size()];
+                double[] y = new double[first.size()];
+                int shared = 0;
+                for (int row = 0; row < first.size(); row++) {
+                    int other = second.getRow(first.getString(NetworkCharacter.ID, row));
+                    if (other >= 0) {
+                        x[shared] = firstValues[row];
+                        y[shared] = secondValues[other];
+                        shared++;
+                    }
+                }
+                double[] statistics = compare(Arrays.copyOf(x, shared), Arrays.copyOf(y, shared));
+                for (int s = 0; s < STATISTICS.length; s++) {
+                    result[s][p] = statistics[s];
+                }
+                p++;
+            }
+        }
+        return result;
+    }
+
+    private double[] compare(double[] x, double[] y) {
+        return new double[]{
+                RankCorrelation.kendallTauB(x, y),
+                RankCorrelation.spearman(x, y),
+                RankCorrelation.topKOverlap(x, y, k)
+        };
+    }
+
+    private static double[] getValues(NodeTable table, String measure) {
+        double[] values = table.getDoubles(measure);
+        if (REVERSED.contains(measure)) {
+            double[] negated = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                negated[i] = -values[i];
+            }
+            return negated;
+        }
+        return values;
+    }
+
+    private static int statisticIndex(String statistic) {
+        int index = Arrays.asList(STATISTICS).indexOf(statistic);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown statistic: " + statistic);
+        }
+        return index;
+    }
+
+    private static String headerLine(String first, List<String> names) {
+        StringBuilder sb = new StringBuilder(first);
+        for (String name : names) {
+            sb.append(',').append(name);
+        }
+        return sb.toString();
+    }
+
+    private static String valueLine(String first, double[] values) {
+        DecimalFormat format = new DecimalFormat("0.####");
+        StringBuilder sb = new StringBuilder(first);
+        for (double value : values) {
+            sb.append(',');
+            if (!Double.isNaN(value)) {
+                sb.append(format.format(value));
+            }
+        }
+        return sb.toString();
+    }
+}
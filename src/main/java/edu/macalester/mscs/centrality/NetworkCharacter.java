@@ -1,6 +1,6 @@
 package edu.macalester.mscs.centrality;
 
-import java.util.HashMap;
+import java.util.Collections;
 
 /**
  * Created by abeverid on 6/7/16.
@@ -16,14 +16,21 @@ public class NetworkCharacter implements Comparable<NetworkCharacter> {
     public static final String DEGREE = "Degree";
     public static final String WEIGHTED_DEGREE = "Weighted Degree";
     public static final String MODULARITY_CLASS = "Modularity Class";
+    public static final String ECCENTRICITY = "Eccentricity";
     public static final String CLOSENESS_CENTRALITY = "Closeness Centrality";
+    public static final String HARMONIC_CLOSENESS_CENTRALITY = "Harmonic Closeness Centrality";
     public static final String BETWEENNESS_CENTRALITY = "Betweenness Centrality";
+    public static final String BETWEENNESS_ERROR = "Betweenness Error";
     public static final String AUTHORITY = "Authority";
+    public static final String HUB = "Hub";
     public static final String PAGE_RANK = "PageRank";
     public static final String CLUSTERING_COEFFICIENT = "Clustering Coefficient";
+    public static final String WEIGHTED_CLUSTERING_COEFFICIENT = "Weighted Clustering Coefficient";
+    public static final String TRIANGLES = "Number of triangles";
     public static final String EIGENVECTOR_CENTRALITY = "Eigenvector Centrality";
 
-    private HashMap<String, String> map = new HashMap<>();
+    private final NodeTable table;
+    private final int row;
 
     /*
     private String id;
@@ -47,10 +54,25 @@ public class NetworkCharacter implements Comparable<NetworkCharacter> {
 
 
     public NetworkCharacter(String[] header, String[] line) {
-        for (int i = 0; i < header.length; i++) {
-            map.put(header[i], line[i]);
-        }
+        this(NodeTable.fromRows(header, Collections.singletonList(line)), 0);
+    }
+
+    /**
+     * A character backed by a row of a node table, which holds its parsed attributes
+     * @param table
+     * @param row
+     */
+    public NetworkCharacter(NodeTable table, int row) {
+        this.table = table;
+        this.row = row;
+    }
+
+    public NodeTable getTable() {
+        return table;
+    }
 
+    public int getRow() {
+        return row;
     }
 
     /*
@@ -88,23 +110,28 @@ public class NetworkCharacter implements Comparable<NetworkCharacter> {
      }
 */
 
+    /**
+     * Returns the value of the attribute as text, or null if the table has no such column
+     * @param attributeName
+     * @return
+     */
     public String getAttribute(String attributeName) {
-        return map.get(attributeName);
+        return table.hasColumn(attributeName) ? table.getString(attributeName, row) : null;
     }
 
     public double getAttributeDouble(String attributeName) {
-        return Double.parseDouble(getAttribute(attributeName));
+        return table.getDouble(attributeName, row);
     }
 
     public int getAttributeInt(String attributeName) {
-        return Integer.parseInt(getAttribute(attributeName));
+        return table.getInt(attributeName, row);
     }
 
 
-    public String getId() { return map.get(ID); }
+    public String getId() { return getAttribute(ID); }
 
     public String getLabel() {
-        return map.get(LABEL);
+        return getAttribute(LABEL);
     }
 
     public String getShortName() {
@@ -113,51 +140,51 @@ public class NetworkCharacter implements Comparable<NetworkCharacter> {
     }
 
     public String getAllegiance() {
-        return map.get(ALLEGIANCE);
+        return getAttribute(ALLEGIANCE);
     }
 
     public String getRoyalHouse() {
-        return map.get(ROYAL_HOUSE);
+        return getAttribute(ROYAL_HOUSE);
     }
 
     public String getCulture() {
-        return map.get(CULTURE);
+        return getAttribute(CULTURE);
     }
 
     public double getDegree() {
-        return Double.parseDouble(map.get(DEGREE));
+        return getAttributeDouble(DEGREE);
     }
 
     public double getWeightedDegree() {
-        return Double.parseDouble(map.get(WEIGHTED_DEGREE));
+        return getAttributeDouble(WEIGHTED_DEGREE);
     }
 
     public int getModularityClass() {
-        return Integer.parseInt(map.get(MODULARITY_CLASS));
+        return getAttributeInt(MODULARITY_CLASS);
     }
 
     public double getCloseness() {
-        return Double.parseDouble(map.get(CLOSENESS_CENTRALITY));
+        return getAttributeDouble(CLOSENESS_CENTRALITY);
     }
 
     public double getBetweenness() {
-        return Double.parseDouble(map.get(BETWEENNESS_CENTRALITY));
+        return getAttributeDouble(BETWEENNESS_CENTRALITY);
     }
 
     public double getAuthority() {
-        return Double.parseDouble(map.get(AUTHORITY));
+        return getAttributeDouble(AUTHORITY);
     }
 
     public double getPageRank() {
-        return Double.parseDouble(map.get(PAGE_RANK));
+        return getAttributeDouble(PAGE_RANK);
     }
 
     public double getClustering() {
-        return Double.parseDouble(map.get(CLUSTERING_COEFFICIENT));
+        return getAttributeDouble(CLUSTERING_COEFFICIENT);
     }
 
     public double getEigenvector() {
-        return Double.parseDouble(map.get(EIGENVECTOR_CENTRALITY));
+        return getAttributeDouble(EIGENVECTOR_CENTRALITY);
     }
 
 
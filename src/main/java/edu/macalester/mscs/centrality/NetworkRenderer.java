@@ -0,0 +1,386 @@
+package edu.macalester.mscs.centrality;
+
+import edu.macalester.mscs.network.Matrix;
+import edu.macalester.mscs.utils.FileUtils;
+import edu.macalester.mscs.utils.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Draws a network as an SVG or PNG image without a display, so that pictures of every book can be made
+ * in a batch rather than from screenshots of MatrixBuilder.
+ *
+ * The vertices are placed by a layout and colored by community, with sizes by weighted degree; the edges
+ * are drawn underneath, with widths by weight, and the best connected characters are labeled. The same
+ * drawing code writes either format: each primitive goes straight to the SVG file, or onto the image, as
+ * it is drawn, so nothing is held but the image itself. Only off-screen AWT is used, which works with
+ * java.awt.headless=true.
+ */
+public class NetworkRenderer {
+
+    public static final int DEFAULT_SIZE = 1600;
+    public static final int DEFAULT_LABEL_COUNT = 40;
+
+    public static final String DEFAULT_OUTPUT_FILE_NAME = "src/main/resources/data/output/images/GoT#NUM.#FORMAT";
+
+    private static final double MARGIN = 40;
+    private static final double MIN_RADIUS = 3;
+    private static final double MAX_RADIUS = 24;
+    private static final double MIN_EDGE_WIDTH = 0.5;
+    private static final double MAX_EDGE_WIDTH = 6;
+    private static final Color EDGE_COLOR = new Color(0, 0, 0, 48);
+    private static final Color BORDER_COLOR = Color.WHITE;
+    private static final Color LABEL_COLOR = Color.BLACK;
+    private static final String FONT_FAMILY = Font.SANS_SERIF;
+
+    // Louvain numbers the communities largest first, so the largest get the most distinct colors
+    private static final Color[] COMMUNITY_COLORS = {
+            new Color(31, 119, 180),
+            new Color(255, 127, 14),
+            new Color(44, 160, 44),
+            new Color(214, 39, 40),
+            new Color(148, 103, 189),
+            new Color(140, 86, 75),
+            new Color(227, 119, 194),
+            new Color(188, 189, 34),
+            new Color(23, 190, 207),
+            new Color(174, 199, 232),
+            new Color(255, 187, 120),
+            new Color(152, 223, 138),
+            new Color(255, 152, 150),
+            new Color(197, 176, 213),
+            new Color(196, 156, 148),
+            new Color(247, 182, 210)
+    };
+    private static final Color OTHER_COMMUNITY_COLOR = new Color(127, 127, 127);
+
+    private final CsrGraph graph;
+    private final double[][] positions;
+    private final int[] communities;
+    private final int width;
+    private final int height;
+    private final int labelCount;
+
+    /**
+     * Lays out the matrix with ForceAtlas2 and colors it by Louvain community
+     * @param matrix
+     */
+    public NetworkRenderer(Matrix matrix) {
+        this(CsrGraph.fromMatrix(matrix));
+    }
+
+    private NetworkRenderer(CsrGraph graph) {
+        this(new ForceAtlas2(graph), new Louvain(graph).getCommunities(), DEFAULT_SIZE, DEFAULT_SIZE);
+    }
+
+    /**
+     * @param layout
+     * @param communities the community of each vertex of the layout's graph, numbered from 0
+     * @param width in pixels
+     * @param height in pixels
+     */
+    public NetworkRenderer(ForceAtlas2 layout, int[] communities, int width, int height) {
+        this(layout.getGraph(), layout.getPositions(width, height, MARGIN), communities, width, height, DEFAULT_LABEL_COUNT);
+    }
+
+    /**
+     * @param graph
+     * @param positions [vertex]{x, y} in pixels, with y increasing downward
+     * @param communities the community of each vertex, numbered from 0
+     * @param width in pixels
+     * @param height in pixels
+     * @param labelCount the number of characters to label, by decreasing weighted degree
+     */
+    public NetworkRenderer(CsrGraph graph, double[][] positions, int[] communities, int width, int height, int labelCount) {
+        if (positions.length != graph.size() || communities.length != graph.size()) {
+            throw new IllegalArgumentException("Expected " + graph.size() + " positions and communities, got "
+                    + positions.length + " and " + communities.length);
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+        }
+        this.graph = graph;
+        this.positions = positions;
+        this.communities = communities;
+        this.width = width;
+        this.height = height;
+        this.labelCount = labelCount;
+    }
+
+    /**
+     * Renders every book, in parallel, to the formats given as arguments, or to both SVG and PNG
+     * @param args
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        final List<String> formats = args.length > 0 ? Arrays.asList(args) : Arrays.asList("svg", "png");
+
+        List<Matrix> books = new ArrayList<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < CentraltyTableMaker.BOOK_NUMS.length; i++) {
+            final String bookNum = CentraltyTableMaker.BOOK_NUMS[i];
+            final Matrix matrix;
+            if (i < NodeDataMaker.MATRIX_FILE_NAMES.length) {
+                matrix = Matrix.fromMatrixCsv(NodeDataMaker.MATRIX_FILE_NAMES[i]);
+                books.add(matrix);
+            } else {
+                matrix = Matrix.combine(books);
+            }
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    long start = System.currentTimeMillis();
+                    NetworkRenderer renderer = new NetworkRenderer(matrix);
+                    for (String format : formats) {
+                        String file = DEFAULT_OUTPUT_FILE_NAME.replace("#NUM", bookNum).replace("#FORMAT", format);
+                        new File(file).getAbsoluteFile().getParentFile().mkdirs();
+                        renderer.write(file);
+                    }
+                    System.out.println("Rendered book " + bookNum + " in " + (System.currentTimeMillis() - start) + " ms");
+                    return null;
+                }
+            });
+        }
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while rendering", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error rendering", e.getCause());
+        }
+    }
+
+    /**
+     * Writes the image in the format given by the file's extension, svg or png
+     * @param file
+     */
+    public void write(String file) {
+        String lower = file.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".svg")) {
+            writeSvg(file);
+        } else if (lower.endsWith(".png")) {
+            writePng(file);
+        } else {
+            throw new IllegalArgumentException("Unsupported image format: " + file);
+        }
+    }
+
+    public void writeSvg(String file) {
+        Logger logger = Logger.toFile(file);
+        try {
+            toSvgLog(logger);
+            logger.commit();
+        } finally {
+            logger.close();
+        }
+    }
+
+    /**
+     * Logs the image as SVG, one element per line
+     * @param logger
+     * @return the logger
+     */
+    public Logger toSvgLog(Logger logger) {
+        SvgCanvas canvas = new SvgCanvas(logger);
+        logger.log("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        logger.log("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height
+                + "\" viewBox=\"0 0 " + width + " " + height + "\">");
+        logger.log("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>");
+        draw(canvas);
+        logger.log("</svg>");
+        return logger;
+    }
+
+    public void writePng(String file) {
+        BufferedImage image = toImage();
+        try (FileUtils.AtomicOutputStream out = FileUtils.openOutputStream(file)) {
+            if (!ImageIO.write(image, "png", out)) {
+                throw new IllegalStateException("No PNG writer is available");
+            }
+            out.commit();
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing " + file, e);
+        }
+    }
+
+    /**
+     * Draws the network onto a new off-screen image
+     * @return
+     */
+    public BufferedImage toImage() {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            draw(new GraphicsCanvas(graphics));
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Draws the edges, then the vertices over them, then the labels over everything
+     */
+    private void draw(Canvas canvas) {
+        int n = graph.size();
+        int[] offsets = graph.getOffsets();
+        int[] neighbors = graph.getNeighbors();
+        double[] weights = graph.getWeights();
+
+        double maxWeight = 0;
+        for (double weight : weights) {
+            maxWeight = Math.max(maxWeight, weight);
+        }
+        for (int u = 0; u < n; u++) {
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                int v = neighbors[k];
+                if (v > u) {
+                    double edgeWidth = MIN_EDGE_WIDTH + (MAX_EDGE_WIDTH - MIN_EDGE_WIDTH) * Math.sqrt(weights[k] / maxWeight);
+                    canvas.line(positions[u][0], positions[u][1], positions[v][0], positions[v][1], edgeWidth, EDGE_COLOR);
+                }
+            }
+        }
+
+        double maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            maxDegree = Math.max(maxDegree, graph.weightedDegree(v));
+        }
+        double[] radii = new double[n];
+        for (int v = 0; v < n; v++) {
+            double share = maxDegree > 0 ? Math.sqrt(graph.weightedDegree(v) / maxDegree) : 0;
+            radii[v] = MIN_RADIUS + (MAX_RADIUS - MIN_RADIUS) * share;
+        }
+        // the largest last, so that they are on top
+        Integer[] order = new Integer[n];
+        for (int v = 0; v < n; v++) {
+            order[v] = v;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(graph.weightedDegree(a), graph.weightedDegree(b));
+            }
+        });
+        for (int v : order) {
+            canvas.circle(positions[v][0], positions[v][1], radii[v], getColor(communities[v]));
+        }
+        for (int i = n - 1; i >= Math.max(0, n - labelCount); i--) {
+            int v = order[i];
+            double size = 8 + radii[v] / 2;
+            canvas.text(positions[v][0], positions[v][1] - radii[v] - 2, size, graph.getName(v));
+        }
+    }
+
+    private static Color getColor(int community) {
+        return community >= 0 && community < COMMUNITY_COLORS.length ? COMMUNITY_COLORS[community] : OTHER_COMMUNITY_COLOR;
+    }
+
+    /**
+     * Where the primitives are drawn
+     */
+    private interface Canvas {
+        void line(double x1, double y1, double x2, double y2, double width, Color color);
+
+        void circle(double x, double y, double radius, Color fill);
+
+        /**
+         * Draws text centered horizontally on x, with its baseline at y
+         */
+        void text(double x, double y, double size, String text);
+    }
+
+    private static class SvgCanvas implements Canvas {
+        private final Logger logger;
+
+        SvgCanvas(Logger logger) {
+            this.logger = logger;
+        }
+
+        @Override
+        public void line(double x1, double y1, double x2, double y2, double width, Color color) {
+            logger.log("<line x1=\"" + format(x1) + "\" y1=\"" + format(y1) + "\" x2=\"" + format(x2)
+                    + "\" y2=\"" + format(y2) + "\" stroke=\"" + toHex(color) + "\" stroke-opacity=\""
+                    + format(color.getAlpha() / 255.0) + "\" stroke-width=\"" + format(width) + "\"/>");
+        }
+
+        @Override
+        public void circle(double x, double y, double radius, Color fill) {
+            logger.log("<circle cx=\"" + format(x) + "\" cy=\"" + format(y) + "\" r=\"" + format(radius)
+                    + "\" fill=\"" + toHex(fill) + "\" stroke=\"" + toHex(BORDER_COLOR) + "\"/>");
+        }
+
+        @Override
+        public void text(double x, double y, double size, String text) {
+            logger.log("<text x=\"" + format(x) + "\" y=\"" + format(y) + "\" font-family=\"sans-serif\" font-size=\""
+                    + format(size) + "\" text-anchor=\"middle\" fill=\"" + toHex(LABEL_COLOR) + "\">"
+                    + escape(text) + "</text>");
+        }
+
+        private static String format(double value) {
+            return String.format(Locale.ROOT, "%.2f", value);
+        }
+
+        private static String toHex(Color color) {
+            return String.format("#%02x%02x%02x", color.getRed(), color.getGreen(), color.getBlue());
+        }
+
+        private static String escape(String text) {
+            return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+        }
+    }
+
+    private static class GraphicsCanvas implements Canvas {
+        private final Graphics2D graphics;
+
+        GraphicsCanvas(Graphics2D graphics) {
+            this.graphics = graphics;
+        }
+
+        @Override
+        public void line(double x1, double y1, double x2, double y2, double width, Color color) {
+            graphics.setColor(color);
+            graphics.setStroke(new BasicStroke((float) width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            graphics.draw(new Line2D.Double(x1, y1, x2, y2));
+        }
+
+        @Override
+        public void circle(double x, double y, double radius, Color fill) {
+            Ellipse2D circle = new Ellipse2D.Double(x - radius, y - radius, 2 * radius, 2 * radius);
+            graphics.setColor(fill);
+            graphics.fill(circle);
+            graphics.setColor(BORDER_COLOR);
+            graphics.setStroke(new BasicStroke(1));
+            graphics.draw(circle);
+        }
+
+        @Override
+        public void text(double x, double y, double size, String text) {
+            graphics.setFont(new Font(FONT_FAMILY, Font.PLAIN, 1).deriveFont((float) size));
+            graphics.setColor(LABEL_COLOR);
+            double textWidth = graphics.getFontMetrics().getStringBounds(text, graphics).getWidth();
+            graphics.drawString(text, (float) (x - textWidth / 2), (float) y);
+        }
+    }
+}
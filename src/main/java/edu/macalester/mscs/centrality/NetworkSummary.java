@@ -0,0 +1,303 @@
+package edu.macalester.mscs.centrality;
+
+import edu.macalester.mscs.utils.Logger;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Network-level statistics of a graph, cheap enough to compute on every build: the node and edge
+ * counts, density, degree distribution, degree assortativity, average clustering, component sizes,
+ * and the average path length over a sample of sources.
+ *
+ * Everything but the path length comes from one traversal of the adjacency. Each edge is visited
+ * once, from its smaller end, where it adds to the assortativity sums, joins the components of its
+ * ends, and counts the triangles it closes against the marked neighbors of that end. The path length
+ * is then the mean over breadth-first searches from a seeded random sample of sources, or from every
+ * source if the sample is at least the size of the graph. Paths are counted in edges, as in Gephi.
+ */
+public class NetworkSummary {
+
+    public static final int DEFAULT_PATH_SAMPLES = 64;
+    public static final long DEFAULT_SEED = 42;
+
+    private final CsrGraph graph;
+    private final int pathSamples;
+    private final long seed;
+
+    private boolean computed = false;
+    private int[] degreeCounts; // number of vertices of each degree
+    private double assortativity;
+    private double averageClustering;
+    private int[] componentSizes; // largest first
+    private double averagePathLength;
+    private int sampledSources;
+
+    public NetworkSummary(CsrGraph graph) {
+        this(graph, DEFAULT_PATH_SAMPLES, DEFAULT_SEED);
+    }
+
+    /**
+     * @param graph
+     * @param pathSamples the number of sources for the average path length
+     * @param seed
+     */
+    public NetworkSummary(CsrGraph graph, int pathSamples, long seed) {
+        this.graph = graph;
+        this.pathSamples = pathSamples;
+        this.seed = seed;
+    }
+
+    /**
+     * Computes the statistics, if they have not been computed already
+     * @return this
+     */
+    public synchronized NetworkSummary compute() {
+        if (!computed) {
+            traverse();
+            samplePaths();
+            computed = true;
+        }
+        return this;
+    }
+
+    public int getNodeCount() {
+        return graph.size();
+    }
+
+    public int getEdgeCount() {
+        return graph.edgeCount();
+    }
+
+    /**
+     * Returns the fraction of the possible edges that are present
+     * @return
+     */
+    public double getDensity() {
+        int n = graph.size();
+        return n < 2 ? 0 : 2.0 * graph.edgeCount() / ((double) n * (n - 1));
+    }
+
+    /**
+     * Returns the number of vertices of each degree, indexed by degree
+     * @return
+     */
+    public int[] getDegreeDistribution() {
+        compute();
+        return degreeCounts.clone();
+    }
+
+    public double getAverageDegree() {
+        int n = graph.size();
+        return n == 0 ? 0 : 2.0 * graph.edgeCount() / n;
+    }
+
+    /**
+     * Returns Newman's degree assortativity, the correlation between the degrees at the two ends
+     * of the edges, or NaN if every edge joins vertices of the same degrees
+     * @return
+     */
+    public double getAssortativity() {
+        compute();
+        return assortativity;
+    }
+
+    /**
+     * Returns the mean local clustering coefficient, where vertices with fewer than two neighbors count as 0
+     * @return
+     */
+    public double getAverageClustering() {
+        compute();
+        return averageClustering;
+    }
+
+    /**
+     * Returns the sizes of the connected components, largest first
+     * @return
+     */
+    public int[] getComponentSizes() {
+        compute();
+        return componentSizes.clone();
+    }
+
+    /**
+     * Returns the mean number of edges on the shortest paths between connected pairs, from the sampled sources
+     * @return
+     */
+    public double getAveragePathLength() {
+        compute();
+        return averagePathLength;
+    }
+
+    /**
+     * Returns the number of sources the average path length was computed from
+     * @return
+     */
+    public int getSampledSources() {
+        compute();
+        return sampledSources;
+    }
+
+    /**
+     * Logs the statistics, one per line, then the degree distribution as degree and count pairs
+     * @param logger
+     * @return the logger
+     */
+    public Logger toLog(Logger logger) {
+        compute();
+        logger.log("Nodes: " + getNodeCount());
+        logger.log("Edges: " + getEdgeCount());
+        logger.log("Density: " + getDensity());
+        logger.log("Average degree: " + getAverageDegree());
+        logger.log("Maximum degree: " + Math.max(0, degreeCounts.length - 1));
+        logger.log("Degree assortativity: " + assortativity);
+        logger.log("Average clustering coefficient: " + averageClustering);
+        logger.log("Average path length: " + averagePathLength + " (from " + sampledSources + " of "
+                + getNodeCount() + " sources)");
+        logger.log("Connected components: " + componentSizes.length);
+        logger.log("Component sizes: " + Arrays.toString(componentSizes));
+        logger.log();
+        logger.log("Degree distribution:");
+        logger.log("degree,count");
+        for (int degree = 0; degree < degreeCounts.length; degree++) {
+            if (degreeCounts[degree] > 0) {
+                logger.log(degree + "," + degreeCounts[degree]);
+            }
+        }
+        return logger;
+    }
+
+    private void traverse() {
+        int n = graph.size();
+        int[] offsets = graph.getOffsets();
+        int[] neighbors = graph.getNeighbors();
+
+        int maxDegree = 0;
+        for (int u = 0; u < n; u++) {
+            maxDegree = Math.max(maxDegree, graph.degree(u));
+        }
+        degreeCounts = new int[n == 0 ? 0 : maxDegree + 1];
+        long[] triangles = new long[n];
+        int[] parents = new int[n];
+        for (int u = 0; u < n; u++) {
+            parents[u] = u;
+        }
+        int[] marks = new int[n];
+        Arrays.fill(marks, -1);
+        double productSum = 0;
+        double degreeSum = 0;
+        double squareSum = 0;
+
+        for (int u = 0; u < n; u++) {
+            int du = graph.degree(u);
+            degreeCounts[du]++;
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                marks[neighbors[k]] = u;
+            }
+            // the rows are sorted, so the edges to larger neighbors are at the end
+            for (int k = offsets[u + 1] - 1; k >= offsets[u] && neighbors[k] > u; k--) {
+                int v = neighbors[k];
+                int dv = graph.degree(v);
+                productSum += (double) du * dv;
+                degreeSum += du + dv;
+                squareSum += (double) du * du + (double) dv * dv;
+                union(parents, u, v);
+                // triangles u < v < w, each found once
+                for (int j = offsets[v + 1] - 1; j >= offsets[v] && neighbors[j] > v; j--) {
+                    int w = neighbors[j];
+                    if (marks[w] == u) {
+                        triangles[u]++;
+                        triangles[v]++;
+                        triangles[w]++;
+                    }
+                }
+            }
+        }
+
+        double edges = graph.edgeCount();
+        if (edges > 0) {
+            double meanEnd = degreeSum / (2 * edges);
+            double numerator = productSum / edges - meanEnd * meanEnd;
+            double denominator = squareSum / (2 * edges) - meanEnd * meanEnd;
+            assortativity = denominator == 0 ? Double.NaN : numerator / denominator;
+        } else {
+            assortativity = Double.NaN;
+        }
+
+        double clusteringSum = 0;
+        for (int u = 0; u < n; u++) {
+            long d = graph.degree(u);
+            if (d >= 2) {
+                clusteringSum += 2.0 * triangles[u] / (d * (d - 1));
+            }
+        }
+        averageClustering = n == 0 ? 0 : clusteringSum / n;
+
+        int[] sizes = new int[n];
+        int count = 0;
+        for (int u = 0; u < n; u++) {
+            if (sizes[find(parents, u)]++ == 0) {
+                count++;
+            }
+        }
+        componentSizes = new int[count];
+        int c = 0;
+        for (int size : sizes) {
+            if (size > 0) {
+                componentSizes[c++] = size;
+            }
+        }
+        Arrays.sort(componentSizes);
+        for (int i = 0; i < count / 2; i++) {
+            int temp = componentSizes[i];
+            componentSizes[i] = componentSizes[count - 1 - i];
+            componentSizes[count - 1 - i] = temp;
+        }
+    }
+
+    private void samplePaths() {
+        int n = graph.size();
+        int[] sources = new int[n];
+        for (int i = 0; i < n; i++) {
+            sources[i] = i;
+        }
+        sampledSources = Math.min(pathSamples, n);
+        if (sampledSources < n) {
+            // a partial shuffle puts a uniform sample at the front
+            Random random = new Random(seed);
+            for (int i = 0; i < sampledSources; i++) {
+                int j = i + random.nextInt(n - i);
+                int temp = sources[i];
+                sources[i] = sources[j];
+                sources[j] = temp;
+            }
+        }
+        ShortestPaths paths = new ShortestPaths(graph, false);
+        double sum = 0;
+        long pairs = 0;
+        for (int i = 0; i < sampledSources; i++) {
+            paths.run(sources[i]);
+            for (int r = 1; r < paths.reached; r++) {
+                sum += paths.distance[paths.order[r]];
+            }
+            pairs += paths.reached - 1;
+        }
+        averagePathLength = pairs == 0 ? 0 : sum / pairs;
+    }
+
+    private static int find(int[] parents, int u) {
+        while (parents[u] != u) {
+            parents[u] = parents[parents[u]];
+            u = parents[u];
+        }
+        return u;
+    }
+
+    private static void union(int[] parents, int u, int v) {
+        int a = find(parents, u);
+        int b = find(parents, v);
+        if (a != b) {
+            parents[Math.max(a, b)] = Math.min(a, b);
+        }
+    }
+}
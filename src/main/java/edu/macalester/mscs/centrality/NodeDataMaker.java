@@ -0,0 +1,310 @@
+package edu.macalester.mscs.centrality;
+
+import edu.macalester.mscs.network.*;
+import edu.macalester.mscs.utils.Logger;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Computes the node data that we used to export from Gephi, directly from a Matrix.
+ * The output has the same columns as the Gephi node-data CSVs, so CentraltyTableMaker
+ * can read it without any GUI step.
+ */
+public class NodeDataMaker {
+
+    public static final String DEFAULT_OUTPUT_FILE_NAME = "src/main/resources/data/output/centrality/GoT#NUM-node-data.csv";
+
+    /**
+     * The most recent matrix CSV for each book, in the same order as CentraltyTableMaker.BOOK_NUMS
+     */
+    public static final String[] MATRIX_FILE_NAMES = {
+            "src/main/resources/data/output/GoT1-18-mat-merged.csv",
+            "src/main/resources/data/output/GoT2-6-mat-merged.csv",
+            "src/main/resources/data/output/GoT3-7-mat-mynowiki.csv",
+            "src/main/resources/data/output/GoT4-6-mat-mynowiki.csv",
+            "src/main/resources/data/output/GoT5-3-mat-11complete.csv"
+    };
+
+    public static final String[] CHARACTER_DATA_FILE_NAMES = {
+            GameOfThronesConstructor.CHARACTER_DATA_FILE_NAME,
+            ClashOfKingsConstructor.CHARACTER_DATA_FILE_NAME,
+            StormOfSwordsConstructor.CHARACTER_DATA_FILE_NAME,
+            FeastForCrowsConstructor.CHARACTER_DATA_FILE_NAME,
+            DanceWithDragonsConstructor.CHARACTER_DATA_FILE_NAME
+    };
+
+    /**
+     * Columns that NetworkCharacter parses as integers
+     */
+    private static final Set<String> INTEGER_COLUMNS = new HashSet<>(Arrays.asList(NetworkCharacter.MODULARITY_CLASS));
+
+    private final Matrix matrix;
+    private final CsrGraph graph;
+    private final Map<String, String[]> characterData;
+
+    private double[] pageRank = null;
+    private double[] eigenvector = null;
+    private Hits hits = null;
+    private Clustering clustering = null;
+    private Louvain louvain = null;
+    private DistanceMetrics distanceMetrics = null;
+    private Betweenness betweenness = null;
+    private ApproximateBetweenness approximateBetweenness = null;
+
+    /**
+     * @param matrix
+     * @param characterData character data by id, as read by Matrix.readCharacterData
+     */
+    public NodeDataMaker(Matrix matrix, Map<String, String[]> characterData) {
+        this.matrix = matrix;
+        this.graph = CsrGraph.fromMatrix(matrix);
+        this.characterData = characterData;
+    }
+
+    /**
+     * Computes the node data for every book and for the whole series, which is the sum of the books,
+     * and makes the centrality table for each from it, then compares the measures.
+     * If an error and a confidence are given as arguments, betweenness is approximated by sampling.
+     * @param args optionally epsilon and delta, as in ApproximateBetweenness
+     */
+    public static void main(String[] args) {
+        List<Matrix> books = new ArrayList<>();
+        Map<String, String[]> allCharacterData = new HashMap<>();
+        String[] dataFileNames = new String[CentraltyTableMaker.BOOK_NUMS.length];
+
+        for (int i = 0; i < CentraltyTableMaker.BOOK_NUMS.length; i++) {
+            String bookNum = CentraltyTableMaker.BOOK_NUMS[i];
+            Matrix matrix;
+            Map<String, String[]> characterData;
+            if (i < MATRIX_FILE_NAMES.length) {
+                matrix = Matrix.fromMatrixCsv(MATRIX_FILE_NAMES[i]);
+                characterData = Matrix.readCharacterData(CHARACTER_DATA_FILE_NAMES[i]);
+                books.add(matrix);
+                for (Map.Entry<String, String[]> entry : characterData.entrySet()) {
+                    if (!allCharacterData.containsKey(entry.getKey())) {
+                        allCharacterData.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            } else {
+                matrix = Matrix.combine(books);
+                characterData = allCharacterData;
+            }
+
+            long start = System.currentTimeMillis();
+            NodeDataMaker maker = new NodeDataMaker(matrix, characterData);
+            if (args.length >= 2) {
+                maker.approximateBetweenness(Double.parseDouble(args[0]), Double.parseDouble(args[1]),
+                        ApproximateBetweenness.DEFAULT_SEED);
+            }
+            String dataFileName = DEFAULT_OUTPUT_FILE_NAME.replace("#NUM", bookNum);
+            maker.writeNodeData(dataFileName);
+            dataFileNames[i] = dataFileName;
+            System.out.println("Computed node data for book " + bookNum + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+
+        long start = System.currentTimeMillis();
+        CentraltyTableMaker.createCentralityTables(CentraltyTableMaker.BOOK_NUMS, CentraltyTableMaker.MIN_PAGE_RANKS,
+                dataFileNames);
+        System.out.println("Created the centrality tables in " + (System.currentTimeMillis() - start) + " ms");
+
+        start = System.currentTimeMillis();
+        MeasureComparison.compareMeasures(CentraltyTableMaker.BOOK_NUMS, dataFileNames);
+        System.out.println("Compared the measures in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    public Matrix getMatrix() {
+        return matrix;
+    }
+
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    public double[] getPageRank() {
+        if (pageRank == null) {
+            pageRank = new PageRank(graph).compute();
+        }
+        return pageRank;
+    }
+
+    /**
+     * Returns the unweighted eigenvector centrality, which is what Gephi computes
+     * @return
+     */
+    public double[] getEigenvector() {
+        if (eigenvector == null) {
+            eigenvector = new EigenvectorCentrality(graph).compute();
+        }
+        return eigenvector;
+    }
+
+    /**
+     * Returns the unweighted hubs and authorities, which are what Gephi computes
+     * @return
+     */
+    public Hits getHits() {
+        if (hits == null) {
+            hits = new Hits(graph).compute();
+        }
+        return hits;
+    }
+
+    public Louvain getLouvain() {
+        if (louvain == null) {
+            louvain = new Louvain(graph).compute();
+        }
+        return louvain;
+    }
+
+    public Clustering getClustering() {
+        if (clustering == null) {
+            clustering = new Clustering(graph).compute();
+        }
+        return clustering;
+    }
+
+    /**
+     * Returns the unweighted distance measures, which are what Gephi computes
+     * @return
+     */
+    public DistanceMetrics getDistanceMetrics() {
+        if (distanceMetrics == null) {
+            distanceMetrics = new DistanceMetrics(graph, false).compute();
+        }
+        return distanceMetrics;
+    }
+
+    /**
+     * Returns the unweighted betweenness, which is what Gephi computes
+     * @return
+     */
+    public Betweenness getBetweenness() {
+        if (betweenness == null) {
+            betweenness = new Betweenness(graph, false).compute();
+        }
+        return betweenness;
+    }
+
+    /**
+     * Approximates betweenness by sampling instead of computing it exactly, which is much faster
+     * on large networks. The node data then has an extra column with the error bound.
+     * @param epsilon the maximum error, as a fraction of the pairs
+     * @param delta the probability that some estimate exceeds the maximum error
+     * @param seed
+     */
+    public void approximateBetweenness(double epsilon, double delta, long seed) {
+        approximateBetweenness = new ApproximateBetweenness(graph, false, epsilon, delta, seed);
+    }
+
+    /**
+     * Returns the numeric columns, in order, keyed by their Gephi column names
+     * @return
+     */
+    public Map<String, double[]> getColumns() {
+        int n = graph.size();
+        double[] degree = new double[n];
+        double[] weightedDegree = new double[n];
+        for (int i = 0; i < n; i++) {
+            degree[i] = graph.degree(i);
+            weightedDegree[i] = graph.weightedDegree(i);
+        }
+        Map<String, double[]> columns = new LinkedHashMap<>();
+        columns.put(NetworkCharacter.DEGREE, degree);
+        columns.put(NetworkCharacter.WEIGHTED_DEGREE, weightedDegree);
+        columns.put(NetworkCharacter.ECCENTRICITY, getDistanceMetrics().getEccentricity());
+        columns.put(NetworkCharacter.CLOSENESS_CENTRALITY, getDistanceMetrics().getCloseness());
+        columns.put(NetworkCharacter.HARMONIC_CLOSENESS_CENTRALITY, getDistanceMetrics().getHarmonicCloseness());
+        if (approximateBetweenness != null) {
+            double[] error = new double[n];
+            Arrays.fill(error, approximateBetweenness.getErrorBound());
+            columns.put(NetworkCharacter.BETWEENNESS_CENTRALITY, approximateBetweenness.getNodeBetweenness());
+            columns.put(NetworkCharacter.BETWEENNESS_ERROR, error);
+        } else {
+            columns.put(NetworkCharacter.BETWEENNESS_CENTRALITY, getBetweenness().getNodeBetweenness());
+        }
+        int[] communities = getLouvain().getCommunities();
+        double[] modularityClass = new double[n];
+        for (int i = 0; i < n; i++) {
+            modularityClass[i] = communities[i];
+        }
+        columns.put(NetworkCharacter.MODULARITY_CLASS, modularityClass);
+        columns.put(NetworkCharacter.AUTHORITY, getHits().getAuthority());
+        columns.put(NetworkCharacter.HUB, getHits().getHub());
+        columns.put(NetworkCharacter.PAGE_RANK, getPageRank());
+        columns.put(NetworkCharacter.EIGENVECTOR_CENTRALITY, getEigenvector());
+        long[] triangles = getClustering().getTriangles();
+        double[] triangleColumn = new double[n];
+        for (int i = 0; i < n; i++) {
+            triangleColumn[i] = triangles[i];
+        }
+        columns.put(NetworkCharacter.CLUSTERING_COEFFICIENT, getClustering().getLocalClustering());
+        columns.put(NetworkCharacter.WEIGHTED_CLUSTERING_COEFFICIENT, getClustering().getWeightedClustering());
+        columns.put(NetworkCharacter.TRIANGLES, triangleColumn);
+        return columns;
+    }
+
+    /**
+     * Logs the node data as CSV lines, with a header row of column names
+     * @param logger
+     * @return the logger
+     */
+    public Logger toNodeDataCsvLog(Logger logger) {
+        Map<String, double[]> columns = getColumns();
+        List<String> header = new ArrayList<>(Arrays.asList(NetworkCharacter.ID, NetworkCharacter.LABEL,
+                NetworkCharacter.ALLEGIANCE, NetworkCharacter.ROYAL_HOUSE, NetworkCharacter.CULTURE));
+        header.addAll(columns.keySet());
+        logger.log(StringUtils.join(header, ','));
+
+        for (int i = 0; i < graph.size(); i++) {
+            String id = graph.getName(i);
+            String[] data = characterData.get(id);
+            StringBuilder sb = new StringBuilder();
+            sb.append(quote(id)).append(',')
+                    .append(quote(getField(data, 1, id))).append(',')
+                    .append(quote(getField(data, 5, ""))).append(',')
+                    .append(quote(getField(data, 6, ""))).append(',')
+                    .append(quote(getField(data, 7, "")));
+            for (Map.Entry<String, double[]> column : columns.entrySet()) {
+                double value = column.getValue()[i];
+                if (INTEGER_COLUMNS.contains(column.getKey())) {
+                    sb.append(',').append((long) value);
+                } else {
+                    sb.append(',').append(value);
+                }
+            }
+            logger.log(sb.toString());
+        }
+        return logger;
+    }
+
+    /**
+     * Writes the node data CSV, streaming it to the file
+     * @param file
+     */
+    public void writeNodeData(String file) {
+        new File(file).getAbsoluteFile().getParentFile().mkdirs();
+        Logger logger = Logger.toFile(file);
+        try {
+            toNodeDataCsvLog(logger);
+            logger.commit();
+        } finally {
+            logger.close();
+        }
+    }
+
+    private static String getField(String[] data, int index, String defaultValue) {
+        return (data != null && data.length > index) ? data[index] : defaultValue;
+    }
+
+    /**
+     * Quotes a text field for the Gephi-style CSV tables, doubling any quotes inside it
+     * @param value
+     * @return
+     */
+    static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
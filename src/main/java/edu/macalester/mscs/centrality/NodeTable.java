@@ -0,0 +1,351 @@
+package edu.macalester.mscs.centrality;
+
+import edu.macalester.mscs.utils.CsvReader;
+
+import java.util.*;
+
+/**
+ * A column-oriented table of node data, as exported by Gephi or written by NodeDataMaker,
+ * with one row per character.
+ *
+ * Each column is parsed once, when the table is read, into an int[] or double[], or for text
+ * columns into an int[] of codes into a dictionary of distinct values, so that sorting and ranking
+ * by an attribute only reads an array. The type of a column comes from its values: integers until a
+ * value with a fraction appears, then doubles, and text as soon as a value is not a number at all.
+ * A number that is written otherwise than it prints, such as 1.50 or 007, keeps its original text,
+ * so getString returns every value as it was read. The id, label and affiliation columns are always text.
+ */
+public class NodeTable {
+
+    public enum Type { INT, DOUBLE, STRING }
+
+    private static final Set<String> STRING_COLUMNS = new HashSet<>(Arrays.asList(
+            NetworkCharacter.ID, NetworkCharacter.LABEL, NetworkCharacter.ALLEGIANCE,
+            NetworkCharacter.ROYAL_HOUSE, NetworkCharacter.CULTURE));
+
+    private final String[] columnNames;
+    private final Map<String, Integer> columnIndices = new HashMap<>();
+    private final Column[] columns;
+    private final Map<String, Integer> rowIndices = new HashMap<>();
+    private final int size;
+
+    private NodeTable(String[] columnNames, Column[] columns, int size) {
+        this.columnNames = columnNames;
+        this.columns = columns;
+        this.size = size;
+        for (int i = 0; i < columnNames.length; i++) {
+            columnIndices.put(columnNames[i], i);
+        }
+        Integer idColumn = columnIndices.get(NetworkCharacter.ID);
+        if (idColumn != null) {
+            for (int row = 0; row < size; row++) {
+                rowIndices.put(columns[idColumn].getString(row), row);
+            }
+        }
+    }
+
+    /**
+     * Reads a node data CSV with a header row, in a single pass
+     * @param file
+     * @return
+     */
+    public static NodeTable read(String file) {
+        CsvReader reader = CsvReader.open(file);
+        if (!reader.next()) {
+            throw new IllegalArgumentException("No header in \'" + file + "\'");
+        }
+        String[] header = reader.toArray();
+        Column[] columns = newColumns(header);
+        int size = 0;
+        while (reader.next()) {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].add(i < reader.size() ? reader.get(i) : "");
+            }
+            size++;
+        }
+        return new NodeTable(header, columns, size);
+    }
+
+    /**
+     * Makes a table from rows that have already been split
+     * @param header
+     * @param rows
+     * @return
+     */
+    public static NodeTable fromRows(String[] header, List<String[]> rows) {
+        Column[] columns = newColumns(header);
+        for (String[] row : rows) {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].add(i < row.length ? row[i] : "");
+            }
+        }
+        return new NodeTable(header.clone(), columns, rows.size());
+    }
+
+    /**
+     * Returns the number of rows
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    public boolean hasColumn(String columnName) {
+        return columnIndices.containsKey(columnName);
+    }
+
+    public Type getType(String columnName) {
+        return getColumn(columnName).type;
+    }
+
+    /**
+     * Returns the row of the character with the given id, or -1 if there is none
+     * @param id
+     * @return
+     */
+    public int getRow(String id) {
+        Integer row = rowIndices.get(id);
+        return row == null ? -1 : row;
+    }
+
+    public String getString(String columnName, int row) {
+        return getColumn(columnName).getString(row);
+    }
+
+    public double getDouble(String columnName, int row) {
+        return getColumn(columnName).getDouble(row);
+    }
+
+    public int getInt(String columnName, int row) {
+        return getColumn(columnName).getInt(row);
+    }
+
+    /**
+     * Returns the values of a numeric column, which must not be modified
+     * @param columnName
+     * @return
+     */
+    public double[] getDoubles(String columnName) {
+        Column column = getColumn(columnName);
+        if (column.type == Type.STRING) {
+            throw new IllegalArgumentException("Column " + columnName + " is not numeric");
+        }
+        return column.getDoubles();
+    }
+
+    private Column getColumn(String columnName) {
+        Integer index = columnIndices.get(columnName);
+        if (index == null) {
+            throw new IllegalArgumentException("No column named " + columnName);
+        }
+        return columns[index];
+    }
+
+    private static Column[] newColumns(String[] header) {
+        Column[] columns = new Column[header.length];
+        for (int i = 0; i < header.length; i++) {
+            columns[i] = new Column(STRING_COLUMNS.contains(header[i]) ? Type.STRING : Type.INT);
+        }
+        return columns;
+    }
+
+    /**
+     * A growable typed column. Numeric columns are widened from int to double, or to text,
+     * as values that need it arrive.
+     */
+    private static class Column {
+
+        private Type type;
+        private int size = 0;
+        private int[] ints = new int[64]; // values, or codes of text values
+        private double[] doubles = null;
+        private double[] intsAsDoubles = null;
+        private List<String> dictionary = null;
+        private Map<String, Integer> codes = null;
+        private Map<Integer, String> texts = new HashMap<>(); // rows of numbers written otherwise than they print
+
+        Column(Type type) {
+            this.type = type;
+            if (type == Type.STRING) {
+                dictionary = new ArrayList<>();
+                codes = new HashMap<>();
+            }
+        }
+
+        void add(CharSequence value) {
+            if (type == Type.INT && isInteger(value)) {
+                ensureCapacity();
+                if (!isCanonicalInteger(value)) {
+                    texts.put(size, value.toString());
+                }
+                ints[size++] = parseInt(value);
+                return;
+            }
+            String text = value.toString();
+            if (type != Type.STRING) {
+                try {
+                    double number = Double.parseDouble(text);
+                    if (type == Type.INT) {
+                        toDoubles();
+                    }
+                    ensureCapacity();
+                    if (!Double.toString(number).equals(text)) {
+                        texts.put(size, text);
+                    }
+                    doubles[size++] = number;
+                    return;
+                } catch (NumberFormatException e) {
+                    toStrings();
+                }
+            }
+            ensureCapacity();
+            ints[size++] = code(text);
+        }
+
+        String getString(int row) {
+            String text = texts.get(row);
+            if (text != null) {
+                return text;
+            }
+            switch (type) {
+                case INT:
+                    return Integer.toString(ints[row]);
+                case DOUBLE:
+                    return Double.toString(doubles[row]);
+                default:
+                    return dictionary.get(ints[row]);
+            }
+        }
+
+        double getDouble(int row) {
+            switch (type) {
+                case INT:
+                    return ints[row];
+                case DOUBLE:
+                    return doubles[row];
+                default:
+                    return Double.parseDouble(dictionary.get(ints[row]));
+            }
+        }
+
+        int getInt(int row) {
+            switch (type) {
+                case INT:
+                    return ints[row];
+                case DOUBLE:
+                    return (int) doubles[row];
+                default:
+                    return Integer.parseInt(dictionary.get(ints[row]));
+            }
+        }
+
+        /**
+         * Returns the column as doubles, converting it once if it holds ints
+         * @return
+         */
+        synchronized double[] getDoubles() {
+            if (type == Type.INT) {
+                if (intsAsDoubles == null) {
+                    intsAsDoubles = new double[size];
+                    for (int i = 0; i < size; i++) {
+                        intsAsDoubles[i] = ints[i];
+                    }
+                }
+                return intsAsDoubles;
+            }
+            if (doubles.length != size) {
+                doubles = Arrays.copyOf(doubles, size);
+            }
+            return doubles;
+        }
+
+        private void toDoubles() {
+            doubles = new double[Math.max(ints.length, 1)];
+            for (int i = 0; i < size; i++) {
+                doubles[i] = ints[i];
+                if (!texts.containsKey(i)) {
+                    texts.put(i, Integer.toString(ints[i]));
+                }
+            }
+            type = Type.DOUBLE;
+        }
+
+        private void toStrings() {
+            String[] values = new String[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = getString(i);
+            }
+            dictionary = new ArrayList<>();
+            codes = new HashMap<>();
+            ints = new int[Math.max(size * 2, 64)];
+            doubles = null;
+            texts.clear();
+            type = Type.STRING;
+            for (int i = 0; i < size; i++) {
+                ints[i] = code(values[i]);
+            }
+        }
+
+        private int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        private void ensureCapacity() {
+            if (type == Type.DOUBLE) {
+                if (size == doubles.length) {
+                    doubles = Arrays.copyOf(doubles, size * 2);
+                }
+            } else if (size == ints.length) {
+                ints = Arrays.copyOf(ints, size * 2);
+            }
+        }
+
+        private static boolean isInteger(CharSequence value) {
+            int start = 0;
+            int length = value.length();
+            if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) {
+                start = 1;
+            }
+            if (length == start || length - start > 9) {
+                return false;
+            }
+            for (int i = start; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns whether an integer is written as it prints, without a plus sign or leading zeros
+         */
+        private static boolean isCanonicalInteger(CharSequence value) {
+            if (value.charAt(0) == '+') {
+                return false;
+            }
+            int start = value.charAt(0) == '-' ? 1 : 0;
+            return value.charAt(start) != '0' || value.length() == 1;
+        }
+
+        private static int parseInt(CharSequence value) {
+            int start = (value.charAt(0) == '-' || value.charAt(0) == '+') ? 1 : 0;
+            int result = 0;
+            for (int i = start; i < value.length(); i++) {
+                result = result * 10 + (value.charAt(i) - '0');
+            }
+            return value.charAt(0) == '-' ? -result : result;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package edu.macalester.mscs.centrality;
+
+/**
+ * Weighted PageRank by power iteration over a CsrGraph.
+ *
+ * A walker at vertex j moves to neighbor i with probability proportional to the weight of
+ * the edge between them, and teleports to a uniformly random vertex with probability
+ * 1 - damping. Walkers at vertices without edges always teleport. Iteration stops when
+ * the L1 change between successive vectors drops below the tolerance.
+ */
+public class PageRank {
+
+    public static final double DEFAULT_DAMPING = 0.85;
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+    public static final int DEFAULT_MAX_ITERATIONS = 1000;
+
+    private final CsrGraph graph;
+    private final SparseKernel kernel;
+    private final double damping;
+    private final double tolerance;
+    private final int maxIterations;
+    private int iterations = 0;
+
+    public PageRank(CsrGraph graph) {
+        this(graph, DEFAULT_DAMPING, DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+    }
+
+    public PageRank(CsrGraph graph, double damping, double tolerance, int maxIterations) {
+        if (damping < 0 || damping > 1) {
+            throw new IllegalArgumentException("Invalid damping factor: " + damping);
+        }
+        this.graph = graph;
+        this.kernel = new SparseKernel(graph, true);
+        this.damping = damping;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Computes PageRank from the uniform vector
+     * @return the PageRank of each vertex, summing to 1
+     */
+    public double[] compute() {
+        return compute(null);
+    }
+
+    /**
+     * Computes PageRank, starting from the given vector if it is not null.
+     * Starting from the result for a similar graph, such as the previous book,
+     * usually takes far fewer iterations than starting from scratch.
+     * @param start may be null
+     * @return the PageRank of each vertex, summing to 1
+     */
+    public double[] compute(double[] start) {
+        int n = graph.size();
+        double[] rank = initialVector(start, n);
+        double[] next = new double[n];
+        double[] scaled = new double[n];
+        if (n == 0) {
+            return rank;
+        }
+        iterations = 0;
+        double delta = Double.MAX_VALUE;
+        while (delta > tolerance && iterations < maxIterations) {
+            double dangling = 0;
+            for (int j = 0; j < n; j++) {
+                double out = graph.weightedDegree(j);
+                if (out > 0) {
+                    scaled[j] = rank[j] / out;
+                } else {
+                    scaled[j] = 0;
+                    dangling += rank[j];
+                }
+            }
+            double base = (1 - damping) / n + damping * dangling / n;
+            kernel.multiply(scaled, next);
+            delta = 0;
+            for (int i = 0; i < n; i++) {
+                next[i] = base + damping * next[i];
+                delta += Math.abs(next[i] - rank[i]);
+            }
+            double[] temp = rank;
+            rank = next;
+            next = temp;
+            iterations++;
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the number of iterations taken by the last call to compute
+     * @return
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns a copy of start normalized to sum to 1, or the uniform vector if start
+     * is null, the wrong length, or has no positive entries.
+     * @param start
+     * @param n
+     * @return
+     */
+    static double[] initialVector(double[] start, int n) {
+        double[] vector = new double[n];
+        double sum = 0;
+        if (start != null && start.length == n) {
+            for (int i = 0; i < n; i++) {
+                vector[i] = Math.max(start[i], 0);
+                sum += vector[i];
+            }
+        }
+        if (sum > 0) {
+            for (int i = 0; i < n; i++) {
+                vector[i] /= sum;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                vector[i] = 1.0 / n;
+            }
+        }
+        return vector;
+    }
+}
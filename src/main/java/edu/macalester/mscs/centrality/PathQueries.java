@@ -0,0 +1,549 @@
+package edu.macalester.mscs.centrality;
+
+import edu.macalester.mscs.network.Matrix;
+import edu.macalester.mscs.utils.FileUtils;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Answers shortest-path queries between characters, such as how far Jon is from Daenerys in book 3
+ * and who connects them, along with the k shortest paths.
+ *
+ * Queries use A* search with the ALT heuristic: the distances from a few landmark vertices to every
+ * vertex are computed once, and by the triangle inequality |d(L, t) - d(L, v)| is a lower bound on the
+ * distance from v to t for every landmark L. The landmarks are chosen far apart, each as far as possible
+ * from those already chosen, so the bound is tight and a query only settles the vertices near the path.
+ * The k shortest paths come from Yen's algorithm, whose detour searches use the same heuristic, as
+ * removing edges can only make distances longer.
+ *
+ * The graph and the landmark distances can be saved as a binary snapshot and read back, so answering
+ * queries does not require rebuilding the network. The snapshot records the size and modification time
+ * of the matrix file it was built from, so a snapshot of an older matrix is rebuilt rather than used.
+ * A PathQueries is immutable and thread safe.
+ */
+public class PathQueries {
+
+    public static final int DEFAULT_LANDMARK_COUNT = 16;
+
+    public static final String DEFAULT_SNAPSHOT_FILE_NAME = "src/main/resources/data/output/paths/GoT#NUM-paths.bin";
+
+    // "PATH", then the format version
+    private static final int MAGIC = 0x50415448;
+    private static final int VERSION = 2;
+
+    private final CsrGraph graph;
+    private final boolean weighted;
+    private final int[] landmarks;
+    private final double[] landmarkDistances; // [vertex * landmarks.length + landmark]
+    private final Map<String, Integer> vertices = new HashMap<>();
+
+    /**
+     * A path between two characters, with its length
+     */
+    public static class Path {
+        private final List<String> characters;
+        private final double length;
+
+        Path(List<String> characters, double length) {
+            this.characters = Collections.unmodifiableList(characters);
+            this.length = length;
+        }
+
+        /**
+         * Returns the characters along the path, including both ends
+         * @return
+         */
+        public List<String> getCharacters() {
+            return characters;
+        }
+
+        /**
+         * Returns the characters that connect the two ends, none if the path has only one
+         * @return
+         */
+        public List<String> getIntermediates() {
+            if (characters.size() < 2) {
+                return Collections.emptyList();
+            }
+            return characters.subList(1, characters.size() - 1);
+        }
+
+        public double getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (String character : characters) {
+                if (sb.length() > 0) {
+                    sb.append(" - ");
+                }
+                sb.append(character);
+            }
+            return sb.append(" (").append(length).append(')').toString();
+        }
+    }
+
+    public PathQueries(CsrGraph graph, boolean weighted) {
+        this(graph, weighted, DEFAULT_LANDMARK_COUNT);
+    }
+
+    /**
+     * Chooses the landmarks and computes their distances to every vertex
+     * @param graph
+     * @param weighted whether distances are the sums of the inverse edge weights, or numbers of edges
+     * @param landmarkCount
+     */
+    public PathQueries(CsrGraph graph, boolean weighted, int landmarkCount) {
+        int n = graph.size();
+        int count = Math.max(0, Math.min(landmarkCount, n));
+        this.graph = graph;
+        this.weighted = weighted;
+        this.landmarks = new int[count];
+        this.landmarkDistances = new double[n * count];
+
+        // the first landmark is the vertex of largest degree, and each next one is the farthest from
+        // the landmarks so far, preferring vertices they cannot reach at all
+        double[] nearest = new double[n];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        ShortestPaths paths = new ShortestPaths(graph, weighted);
+        for (int l = 0; l < count; l++) {
+            int landmark = -1;
+            for (int v = 0; v < n; v++) {
+                if (landmark < 0 || nearest[v] > nearest[landmark]
+                        || (nearest[v] == nearest[landmark] && graph.degree(v) > graph.degree(landmark))) {
+                    landmark = v;
+                }
+            }
+            landmarks[l] = landmark;
+            paths.run(landmark);
+            for (int v = 0; v < n; v++) {
+                landmarkDistances[v * count + l] = paths.distance[v];
+                nearest[v] = Math.min(nearest[v], paths.distance[v]);
+            }
+        }
+        indexVertices();
+    }
+
+    private PathQueries(CsrGraph graph, boolean weighted, int[] landmarks, double[] landmarkDistances) {
+        this.graph = graph;
+        this.weighted = weighted;
+        this.landmarks = landmarks;
+        this.landmarkDistances = landmarkDistances;
+        indexVertices();
+    }
+
+    /**
+     * Answers a query against the snapshot of a book, making the snapshot first if there is none
+     * or if the matrix file has changed since.
+     * The arguments are the book number, the two characters and the number of paths, which default
+     * to book 3, Jon Snow, Daenerys Targaryen and 3.
+     * @param args
+     */
+    public static void main(String[] args) {
+        String bookNum = args.length > 0 ? args[0] : "3";
+        String from = args.length > 1 ? args[1] : "Jon-Snow";
+        String to = args.length > 2 ? args[2] : "Daenerys-Targaryen";
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        int book = Arrays.asList(CentraltyTableMaker.BOOK_NUMS).indexOf(bookNum);
+        if (book < 0 || book >= NodeDataMaker.MATRIX_FILE_NAMES.length) {
+            throw new IllegalArgumentException("No matrix for book " + bookNum);
+        }
+        String matrixFile = NodeDataMaker.MATRIX_FILE_NAMES[book];
+        String snapshot = DEFAULT_SNAPSHOT_FILE_NAME.replace("#NUM", bookNum);
+        PathQueries queries;
+        if (isSnapshotOf(snapshot, matrixFile)) {
+            queries = read(snapshot);
+        } else {
+            long start = System.currentTimeMillis();
+            queries = new PathQueries(CsrGraph.fromMatrix(Matrix.fromMatrixCsv(matrixFile)), true);
+            queries.write(snapshot, matrixFile);
+            System.out.println("Made the snapshot in " + (System.currentTimeMillis() - start) + " ms");
+        }
+
+        long start = System.nanoTime();
+        List<Path> paths = queries.getShortestPaths(from, to, k);
+        System.out.println("Found " + paths.size() + " paths in " + (System.nanoTime() - start) / 1000 + " us");
+        for (Path path : paths) {
+            System.out.println(path);
+        }
+    }
+
+    /**
+     * Returns whether the file is a snapshot that was built from the current version of the
+     * source file, judging by its size and modification time
+     * @param file
+     * @param source
+     * @return
+     */
+    public static boolean isSnapshotOf(String file, String source) {
+        File sourceFile = new File(source);
+        if (!new File(file).isFile() || !sourceFile.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION
+                    && in.readLong() == sourceFile.length() && in.readLong() == sourceFile.lastModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a snapshot saved by write
+     * @param file
+     * @return
+     */
+    public static PathQueries read(String file) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), FileUtils.BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a path snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported path snapshot version " + version);
+            }
+            in.readLong(); // source size
+            in.readLong(); // source modification time
+            CsrGraph graph = CsrGraph.readFrom(in);
+            boolean weighted = in.readBoolean();
+            int[] landmarks = new int[in.readInt()];
+            for (int l = 0; l < landmarks.length; l++) {
+                landmarks[l] = in.readInt();
+            }
+            double[] landmarkDistances = new double[graph.size() * landmarks.length];
+            for (int i = 0; i < landmarkDistances.length; i++) {
+                landmarkDistances[i] = in.readDouble();
+            }
+            return new PathQueries(graph, weighted, landmarks, landmarkDistances);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading path snapshot \'" + file + "\'", e);
+        }
+    }
+
+    /**
+     * Saves the graph and the landmark distances as a binary snapshot, stamped with the size and
+     * modification time of the source file, which replaces the file only once it is complete
+     * @param file
+     * @param source the file the graph was built from
+     */
+    public void write(String file, String source) {
+        new File(file).getAbsoluteFile().getParentFile().mkdirs();
+        File sourceFile = new File(source);
+        try (FileUtils.AtomicOutputStream stream = FileUtils.openOutputStream(file)) {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceFile.length());
+            out.writeLong(sourceFile.lastModified());
+            graph.writeTo(out);
+            out.writeBoolean(weighted);
+            out.writeInt(landmarks.length);
+            for (int landmark : landmarks) {
+                out.writeInt(landmark);
+            }
+            for (double distance : landmarkDistances) {
+                out.writeDouble(distance);
+            }
+            stream.commit();
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing path snapshot \'" + file + "\'", e);
+        }
+    }
+
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    public boolean isWeighted() {
+        return weighted;
+    }
+
+    /**
+     * Returns the names of the landmarks
+     * @return
+     */
+    public String[] getLandmarks() {
+        String[] names = new String[landmarks.length];
+        for (int l = 0; l < landmarks.length; l++) {
+            names[l] = graph.getName(landmarks[l]);
+        }
+        return names;
+    }
+
+    /**
+     * Returns the distance between the characters, or infinity if they are not connected
+     * @param from
+     * @param to
+     * @return
+     */
+    public double getDistance(String from, String to) {
+        Path path = getPath(from, to);
+        return path == null ? Double.POSITIVE_INFINITY : path.getLength();
+    }
+
+    /**
+     * Returns a shortest path between the characters, or null if they are not connected
+     * @param from
+     * @param to
+     * @return
+     */
+    public Path getPath(String from, String to) {
+        int source = getVertex(from);
+        int target = getVertex(to);
+        return new Search().find(source, target, null, null);
+    }
+
+    /**
+     * Returns up to k of the shortest paths between the characters without repeated characters,
+     * shortest first, by Yen's algorithm
+     * @param from
+     * @param to
+     * @param k
+     * @return
+     */
+    public List<Path> getShortestPaths(String from, String to, int k) {
+        int source = getVertex(from);
+        int target = getVertex(to);
+        List<Path> found = new ArrayList<>();
+        List<int[]> foundVertices = new ArrayList<>();
+        Search search = new Search();
+        Path first = search.find(source, target, null, null);
+        if (first == null || k <= 0) {
+            return found;
+        }
+        found.add(first);
+        foundVertices.add(search.lastPath);
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        Set<List<Integer>> seen = new HashSet<>();
+        seen.add(asList(search.lastPath));
+        boolean[] blockedVertices = new boolean[graph.size()];
+        boolean[] blockedSlots = new boolean[graph.getNeighbors().length];
+
+        while (found.size() < k) {
+            int[] previous = foundVertices.get(foundVertices.size() - 1);
+            double rootLength = 0;
+            for (int i = 0; i < previous.length - 1; i++) {
+                int spur = previous[i];
+                // block the next edge of every found path that shares this root, and the root itself
+                for (int[] path : foundVertices) {
+                    if (path.length > i + 1 && sharesRoot(path, previous, i)) {
+                        blockEdge(blockedSlots, path[i], path[i + 1]);
+                    }
+                }
+                for (int j = 0; j < i; j++) {
+                    blockedVertices[previous[j]] = true;
+                }
+
+                Path spurPath = search.find(spur, target, blockedVertices, blockedSlots);
+                if (spurPath != null) {
+                    int[] vertices = new int[i + search.lastPath.length];
+                    System.arraycopy(previous, 0, vertices, 0, i);
+                    System.arraycopy(search.lastPath, 0, vertices, i, search.lastPath.length);
+                    if (seen.add(asList(vertices))) {
+                        candidates.add(new Candidate(vertices, rootLength + spurPath.getLength()));
+                    }
+                }
+
+                Arrays.fill(blockedVertices, false);
+                Arrays.fill(blockedSlots, false);
+                rootLength += edgeLength(previous[i], previous[i + 1]);
+            }
+            Candidate next = candidates.poll();
+            if (next == null) {
+                break;
+            }
+            found.add(toPath(next.vertices, next.length));
+            foundVertices.add(next.vertices);
+        }
+        return found;
+    }
+
+    private void indexVertices() {
+        for (int v = 0; v < graph.size(); v++) {
+            vertices.put(graph.getName(v), v);
+        }
+    }
+
+    private int getVertex(String name) {
+        Integer vertex = vertices.get(name);
+        if (vertex == null) {
+            throw new IllegalArgumentException("No character named " + name);
+        }
+        return vertex;
+    }
+
+    /**
+     * Returns the ALT lower bound on the distance from v to t, or infinity if the landmarks show
+     * that t cannot be reached from v
+     * @param v
+     * @param t
+     * @return
+     */
+    private double heuristic(int v, int t) {
+        int count = landmarks.length;
+        double bound = 0;
+        for (int l = 0; l < count; l++) {
+            double dv = landmarkDistances[v * count + l];
+            double dt = landmarkDistances[t * count + l];
+            if (Double.isInfinite(dv) || Double.isInfinite(dt)) {
+                if (Double.isInfinite(dv) != Double.isInfinite(dt)) {
+                    return Double.POSITIVE_INFINITY; // in different components
+                }
+            } else {
+                bound = Math.max(bound, Math.abs(dt - dv));
+            }
+        }
+        return bound;
+    }
+
+    private double edgeLength(int u, int v) {
+        return weighted ? graph.getLengths()[graph.slot(u, v)] : 1;
+    }
+
+    private void blockEdge(boolean[] blockedSlots, int u, int v) {
+        blockedSlots[graph.slot(u, v)] = true;
+        blockedSlots[graph.slot(v, u)] = true;
+    }
+
+    private Path toPath(int[] vertices, double length) {
+        List<String> names = new ArrayList<>(vertices.length);
+        for (int v : vertices) {
+            names.add(graph.getName(v));
+        }
+        return new Path(names, length);
+    }
+
+    private static boolean sharesRoot(int[] path, int[] root, int length) {
+        for (int j = 0; j <= length; j++) {
+            if (path[j] != root[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Integer> asList(int[] vertices) {
+        List<Integer> list = new ArrayList<>(vertices.length);
+        for (int v : vertices) {
+            list.add(v);
+        }
+        return list;
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        final int[] vertices;
+        final double length;
+
+        Candidate(int[] vertices, double length) {
+            this.vertices = vertices;
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int result = Double.compare(length, other.length);
+            return result != 0 ? result : Integer.compare(vertices.length, other.vertices.length);
+        }
+    }
+
+    /**
+     * The workspace of one A* search, reused by the detour searches of Yen's algorithm.
+     * Only the vertices touched by the last search are reset.
+     */
+    private class Search {
+        private final double[] distance = new double[graph.size()];
+        private final int[] parent = new int[graph.size()];
+        private final boolean[] settled = new boolean[graph.size()];
+        private final int[] touched = new int[graph.size()];
+        private int touchedCount = 0;
+        private final IndexedMinHeap heap = new IndexedMinHeap(graph.size());
+
+        int[] lastPath = null;
+
+        Search() {
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * Finds a shortest path avoiding the blocked vertices and edges, or returns null
+         * @param source
+         * @param target
+         * @param blockedVertices may be null
+         * @param blockedSlots may be null
+         * @return
+         */
+        Path find(int source, int target, boolean[] blockedVertices, boolean[] blockedSlots) {
+            reset();
+            lastPath = null;
+            if (Double.isInfinite(heuristic(source, target))) {
+                return null;
+            }
+            int[] offsets = graph.getOffsets();
+            int[] neighbors = graph.getNeighbors();
+            double[] lengths = graph.getLengths();
+
+            touch(source, 0, -1);
+            heap.insertOrDecrease(source, heuristic(source, target));
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                if (u == target) {
+                    break;
+                }
+                settled[u] = true;
+                for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                    int v = neighbors[k];
+                    if (settled[v] || (blockedSlots != null && blockedSlots[k])
+                            || (blockedVertices != null && blockedVertices[v])) {
+                        continue;
+                    }
+                    double candidate = distance[u] + (weighted ? lengths[k] : 1);
+                    if (candidate < distance[v]) {
+                        double bound = heuristic(v, target);
+                        if (Double.isInfinite(bound)) {
+                            continue;
+                        }
+                        touch(v, candidate, u);
+                        heap.insertOrDecrease(v, candidate + bound);
+                    }
+                }
+            }
+            heap.clear();
+            if (Double.isInfinite(distance[target])) {
+                return null;
+            }
+
+            int length = 1;
+            for (int v = target; v != source; v = parent[v]) {
+                length++;
+            }
+            lastPath = new int[length];
+            for (int v = target, i = length - 1; i >= 0; v = parent[v], i--) {
+                lastPath[i] = v;
+            }
+            return toPath(lastPath, distance[target]);
+        }
+
+        private void touch(int v, double d, int p) {
+            if (Double.isInfinite(distance[v])) {
+                touched[touchedCount++] = v;
+            }
+            distance[v] = d;
+            parent[v] = p;
+        }
+
+        private void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                int v = touched[i];
+                distance[v] = Double.POSITIVE_INFINITY;
+                settled[v] = false;
+            }
+            touchedCount = 0;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package edu.macalester.mscs.centrality;
+
+import edu.macalester.mscs.network.Matrix;
+import edu.macalester.mscs.utils.Logger;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Personalized PageRank for many seed characters: the importance of every character from the
+ * point of view of one, where the walker teleports back to the seed instead of to a random vertex.
+ *
+ * Major characters are computed exactly by power iteration, a block of seeds at a time, so that each
+ * iteration is one sparse matrix by dense block product rather than one product per seed. The long
+ * tail of minor characters uses the forward push of Andersen, Chung and Lang instead, which only
+ * touches the neighborhood of the seed and leaves each character's score short by less than epsilon
+ * times its weighted degree. Pushes are independent and run in parallel.
+ */
+public class PersonalizedPageRank {
+
+    public static final int BLOCK_WIDTH = 16;
+    public static final double DEFAULT_PUSH_EPSILON = 1e-6;
+    public static final int DEFAULT_MAJOR_COUNT = 64;
+
+    public static final String DEFAULT_OUTPUT_FILE_NAME = "src/main/resources/data/output/centrality/GoT#NUM-personalized-pagerank.csv";
+
+    // seeds per push task
+    private static final int PUSH_TASK_SIZE = 8;
+
+    private final CsrGraph graph;
+    private final SparseKernel kernel;
+    private final double damping;
+    private final double tolerance;
+    private final int maxIterations;
+
+    public PersonalizedPageRank(Matrix matrix) {
+        this(CsrGraph.fromMatrix(matrix));
+    }
+
+    public PersonalizedPageRank(CsrGraph graph) {
+        this(graph, PageRank.DEFAULT_DAMPING, PageRank.DEFAULT_TOLERANCE, PageRank.DEFAULT_MAX_ITERATIONS);
+    }
+
+    public PersonalizedPageRank(CsrGraph graph, double damping, double tolerance, int maxIterations) {
+        if (damping < 0 || damping >= 1) {
+            throw new IllegalArgumentException("Invalid damping factor: " + damping);
+        }
+        this.graph = graph;
+        this.kernel = new SparseKernel(graph, true);
+        this.damping = damping;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Computes the personalized PageRank of every book and writes the top ten characters from
+     * each character's point of view
+     * @param args
+     */
+    public static void main(String[] args) {
+        List<Matrix> books = new ArrayList<>();
+        for (int i = 0; i < CentraltyTableMaker.BOOK_NUMS.length; i++) {
+            String bookNum = CentraltyTableMaker.BOOK_NUMS[i];
+            Matrix matrix;
+            if (i < NodeDataMaker.MATRIX_FILE_NAMES.length) {
+                matrix = Matrix.fromMatrixCsv(NodeDataMaker.MATRIX_FILE_NAMES[i]);
+                books.add(matrix);
+            } else {
+                matrix = Matrix.combine(books);
+            }
+            long start = System.currentTimeMillis();
+            PersonalizedPageRank personalized = new PersonalizedPageRank(matrix);
+            double[][] ranks = personalized.computeAll(DEFAULT_MAJOR_COUNT, DEFAULT_PUSH_EPSILON);
+            System.out.println("Computed personalized PageRank for book " + bookNum + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+
+            String file = DEFAULT_OUTPUT_FILE_NAME.replace("#NUM", bookNum);
+            new File(file).getAbsoluteFile().getParentFile().mkdirs();
+            Logger logger = Logger.toFile(file);
+            try {
+                personalized.toTopCsvLog(ranks, 10, logger);
+                logger.commit();
+            } finally {
+                logger.close();
+            }
+        }
+    }
+
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Computes every character's personalized PageRank: the characters with the largest weighted
+     * degree exactly, and the rest by forward push
+     * @param majorCount the number of characters to compute exactly
+     * @param epsilon the push threshold, per unit of weighted degree
+     * @return [seed vertex][vertex]
+     */
+    public double[][] computeAll(int majorCount, double epsilon) {
+        int n = graph.size();
+        Integer[] byDegree = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            byDegree[i] = i;
+        }
+        Arrays.sort(byDegree, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(graph.weightedDegree(b), graph.weightedDegree(a));
+            }
+        });
+        majorCount = Math.max(0, Math.min(majorCount, n));
+        int[] major = new int[majorCount];
+        int[] minor = new int[n - majorCount];
+        for (int i = 0; i < n; i++) {
+            if (i < majorCount) {
+                major[i] = byDegree[i];
+            } else {
+                minor[i - majorCount] = byDegree[i];
+            }
+        }
+
+        double[][] ranks = new double[n][];
+        double[][] exact = compute(major);
+        for (int i = 0; i < major.length; i++) {
+            ranks[major[i]] = exact[i];
+        }
+        double[][] approximate = push(minor, epsilon);
+        for (int i = 0; i < minor.length; i++) {
+            ranks[minor[i]] = approximate[i];
+        }
+        return ranks;
+    }
+
+    /**
+     * Computes the personalized PageRank of each seed exactly, by blocked power iteration
+     * @param seeds vertices of the graph
+     * @return [seed][vertex], each summing to 1
+     */
+    public double[][] compute(int[] seeds) {
+        double[][] ranks = new double[seeds.length][];
+        for (int from = 0; from < seeds.length; from += BLOCK_WIDTH) {
+            int[] block = Arrays.copyOfRange(seeds, from, Math.min(from + BLOCK_WIDTH, seeds.length));
+            double[][] blockRanks = computeBlock(block);
+            System.arraycopy(blockRanks, 0, ranks, from, block.length);
+        }
+        return ranks;
+    }
+
+    /**
+     * Approximates the personalized PageRank of each seed by forward push, in parallel
+     * @param seeds vertices of the graph
+     * @param epsilon the push threshold, per unit of weighted degree
+     * @return [seed][vertex]
+     */
+    public double[][] push(int[] seeds, double epsilon) {
+        double[][] ranks = new double[seeds.length][];
+        if (seeds.length == 0) {
+            return ranks;
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        pool.invoke(new PushTask(seeds, epsilon, ranks, 0, seeds.length));
+        return ranks;
+    }
+
+    /**
+     * Logs the characters that matter most from each seed's point of view, other than the seed itself
+     * @param ranks as returned by computeAll
+     * @param top the number of characters per seed
+     * @param logger
+     * @return the logger
+     */
+    public Logger toTopCsvLog(double[][] ranks, int top, Logger logger) {
+        logger.log(NetworkCharacter.ID + ",Rank,Character,Personalized PageRank");
+        for (int seed = 0; seed < ranks.length; seed++) {
+            if (ranks[seed] == null) {
+                continue;
+            }
+            final double[] rank = ranks[seed];
+            Integer[] order = new Integer[rank.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(rank[b], rank[a]);
+                }
+            });
+            int count = 0;
+            for (int i = 0; i < order.length && count < top; i++) {
+                if (order[i] != seed && rank[order[i]] > 0) {
+                    count++;
+                    logger.log(graph.getName(seed) + "," + count + "," + graph.getName(order[i]) + "," + rank[order[i]]);
+                }
+            }
+        }
+        return logger;
+    }
+
+    private double[][] computeBlock(int[] seeds) {
+        int n = graph.size();
+        int width = seeds.length;
+        double[] rank = new double[n * width];
+        double[] next = new double[n * width];
+        double[] scaled = new double[n * width];
+        for (int c = 0; c < width; c++) {
+            rank[seeds[c] * width + c] = 1;
+        }
+        double[] dangling = new double[width];
+        double[] deltas = new double[width];
+
+        int iterations = 0;
+        double delta = Double.MAX_VALUE;
+        while (delta > tolerance && iterations < maxIterations) {
+            Arrays.fill(dangling, 0);
+            for (int j = 0; j < n; j++) {
+                double out = graph.weightedDegree(j);
+                int row = j * width;
+                if (out > 0) {
+                    double inverse = 1 / out;
+                    for (int c = 0; c < width; c++) {
+                        scaled[row + c] = rank[row + c] * inverse;
+                    }
+                } else {
+                    for (int c = 0; c < width; c++) {
+                        scaled[row + c] = 0;
+                        dangling[c] += rank[row + c];
+                    }
+                }
+            }
+            kernel.multiply(scaled, next, width);
+            Arrays.fill(deltas, 0);
+            for (int i = 0; i < n; i++) {
+                int row = i * width;
+                for (int c = 0; c < width; c++) {
+                    next[row + c] *= damping;
+                }
+            }
+            // walkers teleport, and walkers at vertices without edges always teleport, back to the seed
+            for (int c = 0; c < width; c++) {
+                next[seeds[c] * width + c] += 1 - damping + damping * dangling[c];
+            }
+            for (int i = 0; i < n * width; i += width) {
+                for (int c = 0; c < width; c++) {
+                    deltas[c] += Math.abs(next[i + c] - rank[i + c]);
+                }
+            }
+            delta = 0;
+            for (double d : deltas) {
+                delta = Math.max(delta, d);
+            }
+            double[] temp = rank;
+            rank = next;
+            next = temp;
+            iterations++;
+        }
+
+        double[][] ranks = new double[width][n];
+        for (int i = 0; i < n; i++) {
+            for (int c = 0; c < width; c++) {
+                ranks[c][i] = rank[i * width + c];
+            }
+        }
+        return ranks;
+    }
+
+    private double[] push(int seed, double epsilon) {
+        int n = graph.size();
+        int[] offsets = graph.getOffsets();
+        int[] neighbors = graph.getNeighbors();
+        double[] weights = graph.getWeights();
+        double[] rank = new double[n];
+        double[] residual = new double[n];
+        double[] thresholds = new double[n];
+        for (int v = 0; v < n; v++) {
+            thresholds[v] = epsilon * Math.max(graph.weightedDegree(v), 1);
+        }
+        // a ring buffer of the vertices to push, each of which is in it at most once
+        boolean[] queued = new boolean[n];
+        int[] queue = new int[n];
+        int head = 0;
+        int size = 1;
+        residual[seed] = 1;
+        queue[0] = seed;
+        queued[seed] = true;
+        while (size > 0) {
+            int u = queue[head];
+            head = (head + 1) % n;
+            size--;
+            queued[u] = false;
+            double r = residual[u];
+            if (r <= thresholds[u]) {
+                continue;
+            }
+            residual[u] = 0;
+            rank[u] += (1 - damping) * r;
+            double out = graph.weightedDegree(u);
+            if (out == 0) {
+                // walkers at vertices without edges teleport back to the seed
+                residual[seed] += damping * r;
+                if (!queued[seed] && residual[seed] > thresholds[seed]) {
+                    queued[seed] = true;
+                    queue[(head + size) % n] = seed;
+                    size++;
+                }
+                continue;
+            }
+            double share = damping * r / out;
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                int v = neighbors[k];
+                residual[v] += share * weights[k];
+                if (!queued[v] && residual[v] > thresholds[v]) {
+                    queued[v] = true;
+                    queue[(head + size) % n] = v;
+                    size++;
+                }
+            }
+        }
+        return rank;
+    }
+
+    private class PushTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] seeds;
+        private final double epsilon;
+        private final double[][] ranks;
+        private final int from;
+        private final int to;
+
+        PushTask(int[] seeds, double epsilon, double[][] ranks, int from, int to) {
+            this.seeds = seeds;
+            this.epsilon = epsilon;
+            this.ranks = ranks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PUSH_TASK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    ranks[i] = push(seeds[i], epsilon);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PushTask(seeds, epsilon, ranks, from, middle),
+                        new PushTask(seeds, epsilon, ranks, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package edu.macalester.mscs.centrality;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Rank correlations between two measures of the same characters.
+ *
+ * Kendall's tau-b uses Knight's algorithm: sort the characters by the first measure, breaking ties
+ * by the second, then merge sort them by the second measure, counting the swaps, which are the
+ * discordant pairs. Ties are counted from runs in the sorted orders, so the whole thing takes
+ * O(n log n) instead of comparing all n^2 pairs.
+ */
+public class RankCorrelation {
+
+    private RankCorrelation() {
+    }
+
+    /**
+     * Returns Kendall's tau-b, which is NaN if either measure is constant
+     * @param x
+     * @param y
+     * @return
+     */
+    public static double kendallTauB(double[] x, double[] y) {
+        checkLengths(x, y);
+        int n = x.length;
+        long pairs = (long) n * (n - 1) / 2;
+
+        int[] order = sortedOrder(x, y);
+        long xTies = 0;
+        long jointTies = 0;
+        int xRun = 1;
+        int jointRun = 1;
+        for (int i = 1; i <= n; i++) {
+            if (i < n && x[order[i]] == x[order[i - 1]]) {
+                xRun++;
+                if (y[order[i]] == y[order[i - 1]]) {
+                    jointRun++;
+                } else {
+                    jointTies += (long) jointRun * (jointRun - 1) / 2;
+                    jointRun = 1;
+                }
+            } else {
+                xTies += (long) xRun * (xRun - 1) / 2;
+                jointTies += (long) jointRun * (jointRun - 1) / 2;
+                xRun = 1;
+                jointRun = 1;
+            }
+        }
+
+        // merge sort by y, counting the swaps
+        double[] keys = new double[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = y[order[i]];
+        }
+        long swaps = mergeSort(keys, new double[n], 0, n);
+
+        long yTies = 0;
+        int yRun = 1;
+        for (int i = 1; i <= n; i++) {
+            if (i < n && keys[i] == keys[i - 1]) {
+                yRun++;
+            } else {
+                yTies += (long) yRun * (yRun - 1) / 2;
+                yRun = 1;
+            }
+        }
+
+        double denominator = Math.sqrt((double) (pairs - xTies) * (pairs - yTies));
+        if (denominator == 0) {
+            return Double.NaN;
+        }
+        return (pairs - xTies - yTies + jointTies - 2.0 * swaps) / denominator;
+    }
+
+    /**
+     * Returns Spearman's rho, the Pearson correlation of the ranks, with tied values sharing
+     * the average of their ranks. It is NaN if either measure is constant.
+     * @param x
+     * @param y
+     * @return
+     */
+    public static double spearman(double[] x, double[] y) {
+        checkLengths(x, y);
+        double[] xRanks = averageRanks(x);
+        double[] yRanks = averageRanks(y);
+        int n = x.length;
+        double mean = (n + 1) / 2.0; // the mean of any set of average ranks
+        double covariance = 0;
+        double xVariance = 0;
+        double yVariance = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = xRanks[i] - mean;
+            double dy = yRanks[i] - mean;
+            covariance += dx * dy;
+            xVariance += dx * dx;
+            yVariance += dy * dy;
+        }
+        double denominator = Math.sqrt(xVariance * yVariance);
+        return denominator == 0 ? Double.NaN : covariance / denominator;
+    }
+
+    /**
+     * Returns the fraction of the k characters with the largest values of x that are also among
+     * the k with the largest values of y. Ties at the cutoff are broken by position.
+     * @param x
+     * @param y
+     * @param k
+     * @return
+     */
+    public static double topKOverlap(double[] x, double[] y, int k) {
+        checkLengths(x, y);
+        k = Math.min(k, x.length);
+        if (k <= 0) {
+            return Double.NaN;
+        }
+        boolean[] inX = new boolean[x.length];
+        int[] xOrder = sortedOrder(x, null);
+        for (int i = 0; i < k; i++) {
+            inX[xOrder[x.length - 1 - i]] = true;
+        }
+        int[] yOrder = sortedOrder(y, null);
+        int shared = 0;
+        for (int i = 0; i < k; i++) {
+            if (inX[yOrder[y.length - 1 - i]]) {
+                shared++;
+            }
+        }
+        return (double) shared / k;
+    }
+
+    /**
+     * Returns the rank of each value, from 1 for the smallest, with ties sharing their average rank
+     * @param values
+     * @return
+     */
+    static double[] averageRanks(double[] values) {
+        int n = values.length;
+        int[] order = sortedOrder(values, null);
+        double[] ranks = new double[n];
+        int start = 0;
+        for (int i = 1; i <= n; i++) {
+            if (i == n || values[order[i]] != values[order[start]]) {
+                double rank = (start + 1 + i) / 2.0;
+                for (int j = start; j < i; j++) {
+                    ranks[order[j]] = rank;
+                }
+                start = i;
+            }
+        }
+        return ranks;
+    }
+
+    /**
+     * Returns the indices sorted by x, then by y if it is not null, then by index
+     * @param x
+     * @param y may be null
+     * @return
+     */
+    private static int[] sortedOrder(double[] x, double[] y) {
+        int n = x.length;
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            boxed[i] = i;
+        }
+        final double[] first = x;
+        final double[] second = y;
+        Arrays.sort(boxed, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = Double.compare(first[a], first[b]);
+                if (result == 0 && second != null) {
+                    result = Double.compare(second[a], second[b]);
+                }
+                return result != 0 ? result : Integer.compare(a, b);
+            }
+        });
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = boxed[i];
+        }
+        return order;
+    }
+
+    /**
+     * Sorts keys[from, to) in place, returning the number of pairs that were out of order
+     * @param keys
+     * @param buffer
+     * @param from
+     * @param to
+     * @return
+     */
+    private static long mergeSort(double[] keys, double[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return 0;
+        }
+        int middle = (from + to) >>> 1;
+        long swaps = mergeSort(keys, buffer, from, middle) + mergeSort(keys, buffer, middle, to);
+        int left = from;
+        int right = middle;
+        int out = from;
+        while (left < middle && right < to) {
+            if (keys[right] < keys[left]) {
+                swaps += middle - left; // the right key jumps over every remaining left key
+                buffer[out++] = keys[right++];
+            } else {
+                buffer[out++] = keys[left++];
+            }
+        }
+        while (left < middle) {
+            buffer[out++] = keys[left++];
+        }
+        while (right < to) {
+            buffer[out++] = keys[right++];
+        }
+        System.arraycopy(buffer, from, keys, from, to - from);
+        return swaps;
+    }
+
+    private static void checkLengths(double[] x, double[] y) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("Measures of different lengths: " + x.length + " and " + y.length);
+        }
+    }
+}
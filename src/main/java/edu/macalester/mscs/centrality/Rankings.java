@@ -0,0 +1,155 @@
+package edu.macalester.mscs.centrality;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The ranks and maxima of every numeric column of a node table, computed together once,
+ * so that every section of a centrality table can look them up.
+ *
+ * Ranks are competition ranks, as in CentraltyTableMaker: tied characters share a rank, and the
+ * next rank skips past them, so a character's rank is one more than the number of characters with
+ * a strictly larger value. Reverse ranks count the strictly smaller values instead, for measures
+ * such as closeness where smaller is more central. Each column is sorted once, and the columns are
+ * ranked in parallel.
+ */
+public class Rankings {
+
+    private final NodeTable table;
+    private final Map<String, Ranking> rankings = new HashMap<>();
+
+    /**
+     * Ranks every numeric column of the table
+     * @param table
+     */
+    public Rankings(NodeTable table) {
+        this.table = table;
+        List<Callable<Ranking>> tasks = new ArrayList<>();
+        for (final String columnName : table.getColumnNames()) {
+            if (table.getType(columnName) != NodeTable.Type.STRING) {
+                tasks.add(new Callable<Ranking>() {
+                    @Override
+                    public Ranking call() {
+                        return new Ranking(columnName, Rankings.this.table.getDoubles(columnName));
+                    }
+                });
+            }
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        try {
+            for (Future<Ranking> future : pool.invokeAll(tasks)) {
+                Ranking ranking = future.get();
+                rankings.put(ranking.columnName, ranking);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error ranking node data", e.getCause());
+        }
+    }
+
+    public NodeTable getTable() {
+        return table;
+    }
+
+    /**
+     * Returns the largest value of the column, or 0 if they are all negative, as the table axes start at 0
+     * @param columnName
+     * @return
+     */
+    public double getMax(String columnName) {
+        return getRanking(columnName).max;
+    }
+
+    /**
+     * Returns the rank of the row in the column, where 1 is the largest value
+     * @param columnName
+     * @param row
+     * @return
+     */
+    public int getRank(String columnName, int row) {
+        return getRanking(columnName).ranks[row];
+    }
+
+    /**
+     * Returns the rank of the row in the column, where 1 is the smallest value
+     * @param columnName
+     * @param row
+     * @return
+     */
+    public int getReverseRank(String columnName, int row) {
+        return getRanking(columnName).reverseRanks[row];
+    }
+
+    public int getRank(String columnName, int row, boolean reverse) {
+        return reverse ? getReverseRank(columnName, row) : getRank(columnName, row);
+    }
+
+    private Ranking getRanking(String columnName) {
+        Ranking ranking = rankings.get(columnName);
+        if (ranking == null) {
+            throw new IllegalArgumentException("No numeric column named " + columnName);
+        }
+        return ranking;
+    }
+
+    private static class Ranking {
+        final String columnName;
+        final double max;
+        final int[] ranks;
+        final int[] reverseRanks;
+
+        Ranking(String columnName, double[] values) {
+            this.columnName = columnName;
+            int n = values.length;
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            ranks = new int[n];
+            reverseRanks = new int[n];
+            for (int row = 0; row < n; row++) {
+                // the number of smaller values, and the number of values up to and including this one
+                int smaller = lowerBound(sorted, values[row]);
+                int notLarger = upperBound(sorted, values[row]);
+                ranks[row] = n - notLarger + 1;
+                reverseRanks[row] = smaller + 1;
+            }
+            this.max = n > 0 ? Math.max(0, sorted[n - 1]) : 0;
+        }
+
+        private static int lowerBound(double[] sorted, double value) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sorted[middle] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private static int upperBound(double[] sorted, double value) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sorted[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
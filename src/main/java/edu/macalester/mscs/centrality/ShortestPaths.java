@@ -0,0 +1,143 @@
+package edu.macalester.mscs.centrality;
+
+import java.util.Arrays;
+
+/**
+ * Single-source shortest paths over a CsrGraph, recording what Brandes' algorithm needs:
+ * the distance to and the number of shortest paths to each vertex, the vertices in order
+ * of distance, and the shortest-path predecessors of each vertex.
+ *
+ * Unweighted distances are found by breadth-first search, and weighted ones by Dijkstra's
+ * algorithm over the edge lengths. A workspace is not thread safe, but can be reused for
+ * any number of sources, and only the vertices reached from the last source are reset.
+ */
+class ShortestPaths {
+
+    // relative tolerance for treating two weighted path lengths as equal
+    private static final double EPSILON = 1e-10;
+
+    private final CsrGraph graph;
+    private final boolean weighted;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final double[] lengths;
+
+    final double[] distance;
+    final double[] sigma;
+    final int[] order; // reached vertices in nondecreasing distance
+    int reached = 0;
+    // the predecessors of v are stored from offsets[v], since there are at most degree(v) of them
+    final int[] predCount;
+    final int[] predVertex;
+    final int[] predSlot; // slot of the edge from the predecessor to v
+
+    private final IndexedMinHeap heap;
+    private final boolean[] settled;
+
+    ShortestPaths(CsrGraph graph, boolean weighted) {
+        int n = graph.size();
+        this.graph = graph;
+        this.weighted = weighted;
+        this.offsets = graph.getOffsets();
+        this.neighbors = graph.getNeighbors();
+        this.lengths = graph.getLengths();
+        this.distance = new double[n];
+        this.sigma = new double[n];
+        this.order = new int[n];
+        this.predCount = new int[n];
+        this.predVertex = new int[neighbors.length];
+        this.predSlot = new int[neighbors.length];
+        this.heap = weighted ? new IndexedMinHeap(n) : null;
+        this.settled = weighted ? new boolean[n] : null;
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+    }
+
+    CsrGraph getGraph() {
+        return graph;
+    }
+
+    boolean isWeighted() {
+        return weighted;
+    }
+
+    /**
+     * Finds the shortest paths from the source, replacing the results for the previous source
+     * @param source
+     */
+    void run(int source) {
+        reset();
+        distance[source] = 0;
+        sigma[source] = 1;
+        if (weighted) {
+            dijkstra(source);
+        } else {
+            bfs(source);
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < reached; i++) {
+            int v = order[i];
+            distance[v] = Double.POSITIVE_INFINITY;
+            sigma[v] = 0;
+            predCount[v] = 0;
+            if (settled != null) {
+                settled[v] = false;
+            }
+        }
+        reached = 0;
+    }
+
+    private void bfs(int source) {
+        order[reached++] = source;
+        int head = 0;
+        while (head < reached) {
+            int v = order[head++];
+            double next = distance[v] + 1;
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                int w = neighbors[k];
+                if (distance[w] == Double.POSITIVE_INFINITY) {
+                    distance[w] = next;
+                    order[reached++] = w;
+                }
+                if (distance[w] == next) {
+                    sigma[w] += sigma[v];
+                    addPredecessor(w, v, k);
+                }
+            }
+        }
+    }
+
+    private void dijkstra(int source) {
+        heap.insertOrDecrease(source, 0);
+        while (!heap.isEmpty()) {
+            int v = heap.poll();
+            settled[v] = true;
+            order[reached++] = v;
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                int w = neighbors[k];
+                if (settled[w]) {
+                    continue;
+                }
+                double candidate = distance[v] + lengths[k];
+                double tolerance = EPSILON * candidate;
+                if (candidate < distance[w] - tolerance) {
+                    distance[w] = candidate;
+                    sigma[w] = sigma[v];
+                    predCount[w] = 0;
+                    addPredecessor(w, v, k);
+                    heap.insertOrDecrease(w, candidate);
+                } else if (candidate <= distance[w] + tolerance) {
+                    sigma[w] += sigma[v];
+                    addPredecessor(w, v, k);
+                }
+            }
+        }
+    }
+
+    private void addPredecessor(int w, int v, int slot) {
+        int index = offsets[w] + predCount[w]++;
+        predVertex[index] = v;
+        predSlot[index] = slot;
+    }
+}
@@ -0,0 +1,262 @@
+package edu.macalester.mscs.centrality;
+
+import edu.macalester.mscs.network.Matrix;
+import edu.macalester.mscs.utils.Logger;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * PageRank and eigenvector centrality over a series of networks, such as the books in order or
+ * the chapters of one book, as a table of characters by time.
+ *
+ * Each step starts its power iterations from the result of the step before, matched by character,
+ * with characters new to the step starting at the mean previous value. When consecutive networks
+ * overlap, as running totals do, the warm start saves iterations, most of all for eigenvector
+ * centrality on networks where the cold start converges slowly. Only these two measures are
+ * computed, each step a few milliseconds, rather than all of the node data for every step.
+ */
+public class TemporalCentrality {
+
+    public static final String DEFAULT_OUTPUT_FILE_NAME = "src/main/resources/data/output/centrality/GoT-temporal-#MEASURE.csv";
+
+    private final List<Matrix> steps;
+    private final List<String> labels;
+
+    // every character in the series, in order of first appearance
+    private final List<String> characters = new ArrayList<>();
+    private final Map<String, Integer> characterIndices = new HashMap<>();
+
+    private double[][] pageRank = null; // [character][step], NaN where absent
+    private double[][] eigenvector = null;
+    private int[] pageRankIterations = null;
+    private int[] eigenvectorIterations = null;
+
+    /**
+     * @param steps the networks, in time order
+     * @param labels a name for each step, for the table header
+     */
+    public TemporalCentrality(List<Matrix> steps, List<String> labels) {
+        if (steps.size() != labels.size()) {
+            throw new IllegalArgumentException("Got " + steps.size() + " networks but " + labels.size() + " labels");
+        }
+        this.steps = new ArrayList<>(steps);
+        this.labels = new ArrayList<>(labels);
+        for (Matrix matrix : steps) {
+            for (String name : matrix.getCharacters()) {
+                if (!characterIndices.containsKey(name)) {
+                    characterIndices.put(name, characters.size());
+                    characters.add(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the series for the books in order and writes a table for each measure. Each step is
+     * the network of the books so far, unless the first argument is "separate", in which case each
+     * step is one book on its own. The books differ enough from each other that warm starts help
+     * the running totals much more than the separate books.
+     * @param args
+     */
+    public static void main(String[] args) {
+        boolean separate = args.length > 0 && args[0].equals("separate");
+        List<Matrix> books = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < NodeDataMaker.MATRIX_FILE_NAMES.length; i++) {
+            String bookNum = CentraltyTableMaker.BOOK_NUMS[i];
+            if (bookNum.startsWith("-")) {
+                continue; // the combined network is not a step in time
+            }
+            books.add(Matrix.fromMatrixCsv(NodeDataMaker.MATRIX_FILE_NAMES[i]));
+            labels.add(separate || books.size() == 1 ? "Book " + bookNum : "Books 1-" + bookNum);
+        }
+        if (!separate) {
+            books = cumulative(books);
+        }
+        TemporalCentrality temporal = new TemporalCentrality(books, labels);
+
+        long start = System.currentTimeMillis();
+        temporal.compute();
+        System.out.println("Computed the series in " + (System.currentTimeMillis() - start) + " ms, with "
+                + Arrays.toString(temporal.getPageRankIterations()) + " PageRank iterations and "
+                + Arrays.toString(temporal.getEigenvectorIterations()) + " eigenvector iterations");
+
+        String outputFileName = DEFAULT_OUTPUT_FILE_NAME.replace("#MEASURE", (separate ? "separate-" : "") + "#MEASURE");
+        temporal.writeCsv(NetworkCharacter.PAGE_RANK, outputFileName.replace("#MEASURE", "pagerank"));
+        temporal.writeCsv(NetworkCharacter.EIGENVECTOR_CENTRALITY, outputFileName.replace("#MEASURE", "eigenvector"));
+    }
+
+    /**
+     * Returns the running totals of the networks: the first, the first two combined, and so on
+     * @param steps
+     * @return
+     */
+    public static List<Matrix> cumulative(List<Matrix> steps) {
+        List<Matrix> totals = new ArrayList<>();
+        for (int i = 1; i <= steps.size(); i++) {
+            totals.add(Matrix.combine(steps.subList(0, i)));
+        }
+        return totals;
+    }
+
+    /**
+     * Computes both measures for every step, if they have not been computed already
+     * @return this
+     */
+    public synchronized TemporalCentrality compute() {
+        if (pageRank == null) {
+            int n = characters.size();
+            pageRank = new double[n][steps.size()];
+            eigenvector = new double[n][steps.size()];
+            for (double[] row : pageRank) {
+                Arrays.fill(row, Double.NaN);
+            }
+            for (double[] row : eigenvector) {
+                Arrays.fill(row, Double.NaN);
+            }
+            pageRankIterations = new int[steps.size()];
+            eigenvectorIterations = new int[steps.size()];
+
+            double[] previousPageRank = null;
+            double[] previousEigenvector = null;
+            int[] previousIndices = null;
+            for (int t = 0; t < steps.size(); t++) {
+                CsrGraph graph = CsrGraph.fromMatrix(steps.get(t));
+                int[] indices = new int[graph.size()];
+                for (int i = 0; i < indices.length; i++) {
+                    indices[i] = characterIndices.get(graph.getName(i));
+                }
+
+                PageRank pageRanker = new PageRank(graph);
+                double[] ranks = pageRanker.compute(warmStart(previousPageRank, previousIndices, indices));
+                pageRankIterations[t] = pageRanker.getIterations();
+
+                EigenvectorCentrality eigenvectorer = new EigenvectorCentrality(graph);
+                double[] centralities = eigenvectorer.compute(warmStart(previousEigenvector, previousIndices, indices));
+                eigenvectorIterations[t] = eigenvectorer.getIterations();
+
+                for (int i = 0; i < indices.length; i++) {
+                    pageRank[indices[i]][t] = ranks[i];
+                    eigenvector[indices[i]][t] = centralities[i];
+                }
+                previousPageRank = ranks;
+                previousEigenvector = centralities;
+                previousIndices = indices;
+            }
+        }
+        return this;
+    }
+
+    public List<String> getCharacters() {
+        return Collections.unmodifiableList(characters);
+    }
+
+    public List<String> getLabels() {
+        return Collections.unmodifiableList(labels);
+    }
+
+    /**
+     * Returns the PageRank of each character at each step, or NaN where the character is absent
+     * @return [character][step]
+     */
+    public double[][] getPageRank() {
+        compute();
+        return pageRank;
+    }
+
+    /**
+     * Returns the eigenvector centrality of each character at each step, or NaN where the character is absent
+     * @return [character][step]
+     */
+    public double[][] getEigenvector() {
+        compute();
+        return eigenvector;
+    }
+
+    public int[] getPageRankIterations() {
+        compute();
+        return pageRankIterations.clone();
+    }
+
+    public int[] getEigenvectorIterations() {
+        compute();
+        return eigenvectorIterations.clone();
+    }
+
+    /**
+     * Logs a character by time table of the measure, which is NetworkCharacter.PAGE_RANK or
+     * NetworkCharacter.EIGENVECTOR_CENTRALITY. Absent characters have empty cells.
+     * @param measure
+     * @param logger
+     * @return the logger
+     */
+    public Logger toCsvLog(String measure, Logger logger) {
+        double[][] values;
+        if (NetworkCharacter.PAGE_RANK.equals(measure)) {
+            values = getPageRank();
+        } else if (NetworkCharacter.EIGENVECTOR_CENTRALITY.equals(measure)) {
+            values = getEigenvector();
+        } else {
+            throw new IllegalArgumentException("Unknown measure: " + measure);
+        }
+        StringBuilder header = new StringBuilder(NetworkCharacter.ID);
+        for (String label : labels) {
+            header.append(',').append(label);
+        }
+        logger.log(header.toString());
+        for (int c = 0; c < characters.size(); c++) {
+            StringBuilder sb = new StringBuilder(NodeDataMaker.quote(characters.get(c)));
+            for (double value : values[c]) {
+                sb.append(',');
+                if (!Double.isNaN(value)) {
+                    sb.append(value);
+                }
+            }
+            logger.log(sb.toString());
+        }
+        return logger;
+    }
+
+    /**
+     * Writes the table of the measure, streaming it to the file
+     * @param measure
+     * @param file
+     */
+    public void writeCsv(String measure, String file) {
+        new File(file).getAbsoluteFile().getParentFile().mkdirs();
+        Logger logger = Logger.toFile(file);
+        try {
+            toCsvLog(measure, logger);
+            logger.commit();
+        } finally {
+            logger.close();
+        }
+    }
+
+    /**
+     * Maps the previous result onto the vertices of this step, or returns null for the first step
+     * @param previous
+     * @param previousIndices
+     * @param indices
+     * @return
+     */
+    private double[] warmStart(double[] previous, int[] previousIndices, int[] indices) {
+        if (previous == null) {
+            return null;
+        }
+        double[] byCharacter = new double[characters.size()];
+        Arrays.fill(byCharacter, Double.NaN);
+        double mean = 0;
+        for (int i = 0; i < previous.length; i++) {
+            byCharacter[previousIndices[i]] = previous[i];
+            mean += previous[i] / previous.length;
+        }
+        double[] start = new double[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            double value = byCharacter[indices[i]];
+            start[i] = Double.isNaN(value) ? mean : value;
+        }
+        return start;
+    }
+}
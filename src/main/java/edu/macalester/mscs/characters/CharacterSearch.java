@@ -4,6 +4,7 @@ import edu.macalester.mscs.network.ClashOfKingsConstructor;
 import edu.macalester.mscs.network.FeastForCrowsConstructor;
 import edu.macalester.mscs.network.GameOfThronesConstructor;
 import edu.macalester.mscs.network.StormOfSwordsConstructor;
+import edu.macalester.mscs.utils.CsvReader;
 import edu.macalester.mscs.utils.FileUtils;
 
 import java.lang.reflect.Array;
@@ -263,22 +264,41 @@ public class CharacterSearch {
 
     }
 
+    /**
+     * Reads the fields of every record in the CSV file, handling quoted commas,
+     * and adds the raw line of each record to rawLines.
+     * @param fileName
+     * @param rawLines
+     * @return
+     */
+    private static List<String[]> readRecords(String fileName, List<String> rawLines) {
+        CsvReader reader = CsvReader.open(fileName);
+        List<String[]> records = new ArrayList<String[]>();
+        while (reader.next()) {
+            records.add(reader.toArray());
+            rawLines.add(reader.getLine().toString().trim());
+        }
+        return records;
+    }
+
     /**
      * Goes through the original text and then makes a recommendation for each character in the given catelog: keep or remove.
      * @param textName
      * @param catalogName
      */
     private static Map<String,String> processCatalogFile(String textName, String catalogName) {
-        List<String> charLines = FileUtils.readFile(catalogName);
+        List<String> charLines = new ArrayList<String>();
+        List<String[]> charRecords = readRecords(catalogName, charLines);
         HashMap<String, String[]> charMap = new HashMap<String, String[]>();
         HashMap<String, String> charLineMap = new HashMap<String, String>();
 
         System.out.println("Processing book:" + textName + " and catalog:" + catalogName);
 
 
-        for (String line : charLines) {
-            String[] tokens = line.split(",");
-            String key = tokens[1].replace("\"","");
+        for (int i = 0; i < charRecords.size(); i++) {
+            String line = charLines.get(i);
+            String[] tokens = charRecords.get(i);
+            String key = tokens[1];
             charMap.put(key, tokens);
             charLineMap.put(key,line);
         }
@@ -340,8 +360,9 @@ public class CharacterSearch {
         List<String> keepLines = new ArrayList<String>();
         List<String> removeLines = new ArrayList<String>();
 
-        for (String line : charLines) {
-            String charKey = line.split(",")[SHORT_CAT_ID_INDEX];
+        for (int i = 0; i < charRecords.size(); i++) {
+            String line = charLines.get(i);
+            String charKey = charRecords.get(i)[SHORT_CAT_ID_INDEX];
             System.out.println("\t===charKey=[" + charKey + "]");
 
             if (charMap.containsKey(charKey)) {
@@ -368,17 +389,19 @@ public class CharacterSearch {
      * @param previousListName
      */
     private static Map<String,String> processPreviousList(String textName, String previousListName) {
-        List<String> charLines = FileUtils.readFile(previousListName);
+        List<String> charLines = new ArrayList<String>();
+        List<String[]> charRecords = readRecords(previousListName, charLines);
         HashMap<String, String[]> charMap = new HashMap<String, String[]>();
         HashMap<String, String> charLineMap = new HashMap<String, String>();
 
         System.out.println("Processing book:" + textName + " and list:" + previousListName);
 
 
-        for (String line : charLines) {
-            String[] tokens = line.split(",");
+        for (int i = 0; i < charRecords.size(); i++) {
+            String line = charLines.get(i);
+            String[] tokens = charRecords.get(i);
 
-            String key = tokens[0].replace("\"","");
+            String key = tokens[0];
             charMap.put(key, tokens);
             charLineMap.put(key,line);
 
@@ -425,8 +448,9 @@ public class CharacterSearch {
         List<String> keepLines = new ArrayList<String>();
         List<String> removeLines = new ArrayList<String>();
 
-        for (String line : charLines) {
-            String charKey = line.split(",")[0];
+        for (int i = 0; i < charRecords.size(); i++) {
+            String line = charLines.get(i);
+            String charKey = charRecords.get(i)[0];
             System.out.println("\t===charKey=[" + charKey + "]");
 
             if (charMap.containsKey(charKey)) {
@@ -452,16 +476,18 @@ public class CharacterSearch {
      */
     private static Map<String,String> processFiles(String textName,
                                             String catalogName, String keepCatalogName, String removeCatalogName) {
-        List<String> charLines = FileUtils.readFile(catalogName);
+        List<String> charLines = new ArrayList<String>();
+        List<String[]> charRecords = readRecords(catalogName, charLines);
         HashMap<String, String[]> charMap = new HashMap<String, String[]>();
         HashMap<String, String> charLineMap = new HashMap<String, String>();
 
         System.out.println("Processing book:" + textName + " and catalog:" + catalogName);
 
 
-        for (String line : charLines) {
-            String[] tokens = line.split(",");
-            String key = tokens[1].replace("\"","");
+        for (int i = 0; i < charRecords.size(); i++) {
+            String line = charLines.get(i);
+            String[] tokens = charRecords.get(i);
+            String key = tokens[1];
             charMap.put(key, tokens);
             charLineMap.put(key,line);
         }
@@ -523,8 +549,9 @@ public class CharacterSearch {
         List<String> keepLines = new ArrayList<String>();
         List<String> removeLines = new ArrayList<String>();
 
-        for (String line : charLines) {
-            String charKey = line.split(",")[SHORT_CAT_ID_INDEX];
+        for (int i = 0; i < charRecords.size(); i++) {
+            String line = charLines.get(i);
+            String charKey = charRecords.get(i)[SHORT_CAT_ID_INDEX];
             System.out.println("\t===charKey=[" + charKey + "]");
 
             if (charMap.containsKey(charKey)) {
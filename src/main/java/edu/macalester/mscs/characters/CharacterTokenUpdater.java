@@ -1,10 +1,9 @@
 package edu.macalester.mscs.characters;
 
-import com.opencsv.CSVReader;
 import edu.macalester.mscs.network.*;
+import edu.macalester.mscs.utils.CsvReader;
 import edu.macalester.mscs.utils.FileUtils;
 
-import java.io.FileReader;
 import java.util.*;
 
 /**
@@ -129,9 +128,7 @@ public class CharacterTokenUpdater {
 
         String fileName = DanceWithDragonsConstructor.CHARACTER_FILE_NAME;
         try {
-            CSVReader reader = new CSVReader(new FileReader(fileName));
-
-            List<String[]> data = reader.readAll();
+            List<String[]> data = CsvReader.readAll(fileName);
             Set<String> keySet = new TreeSet<String>();
             Set<String> aliasSet = new TreeSet<String>();
 
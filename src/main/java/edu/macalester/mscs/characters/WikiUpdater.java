@@ -1,8 +1,8 @@
 package edu.macalester.mscs.characters;
 
-import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
 import edu.macalester.mscs.network.GameOfThronesConstructor;
+import edu.macalester.mscs.utils.CsvReader;
 import edu.macalester.mscs.utils.FileUtils;
 import org.apache.commons.collections15.ArrayStack;
 import org.apache.commons.lang3.ArrayUtils;
@@ -10,7 +10,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.SystemUtils;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.lang.reflect.Array;
 import java.util.*;
@@ -143,10 +142,7 @@ public class WikiUpdater {
      */
     private static void trimWhitespace() {
         try {
-            CSVReader reader =
-                    new CSVReader(new FileReader(CLEANED_FILE_NAME));
-
-            List<String[]> lines = reader.readAll();
+            List<String[]> lines = CsvReader.readAll(CLEANED_FILE_NAME);
 
             for (int i=0; i < lines.size(); i++) {
                 String[] line = lines.get(i);
@@ -195,7 +191,6 @@ public class WikiUpdater {
 
             writer.writeAll(lines);
 
-            reader.close();
             writer.close();
 
 
@@ -208,10 +203,7 @@ public class WikiUpdater {
     private static void createBookCharacterLists() {
 
         try {
-            CSVReader reader = new CSVReader(new FileReader(TRIMMED_FILE_NAME));
-
-            List<String[]> lines = reader.readAll();
-            reader.close();
+            List<String[]> lines = CsvReader.readAll(TRIMMED_FILE_NAME);
 
             for (int i = 0; i < BOOK_NAMES.length; i++) {
 
@@ -315,10 +307,7 @@ public class WikiUpdater {
     private static void createAllCharacterList() {
 
         try {
-            CSVReader reader = new CSVReader(new FileReader(TRIMMED_FILE_NAME));
-
-            List<String[]> lines = reader.readAll();
-            reader.close();
+            List<String[]> lines = CsvReader.readAll(TRIMMED_FILE_NAME);
 
                CSVWriter writer =
                         new CSVWriter(new FileWriter(ALL_CHAR_FILE_NAME));
@@ -562,8 +551,8 @@ public class WikiUpdater {
 
         try {
 
-            CSVReader edgeReader = new CSVReader(new FileReader("src/main/resources/data/logs/GoT1-edge17-merged.csv"));
-            CSVReader charReader = new CSVReader(new FileReader(FINAL_AWOIAF_DIR + BOOK_NAMES[0].replace(' ', '-') +"-characters.csv"));
+            String edgeFileName = "src/main/resources/data/logs/GoT1-edge17-merged.csv";
+            String charFileName = FINAL_AWOIAF_DIR + BOOK_NAMES[0].replace(' ', '-') +"-characters.csv";
 
             CSVWriter nodeWriter = new CSVWriter(new FileWriter("src/main/resources/data/logs/GoT1-node17-merged.csv"));
 
@@ -573,8 +562,8 @@ public class WikiUpdater {
             HashMap<String, String[]> fullCharMap = new HashMap<String, String[]>();
 
 
-            List<String[]> edgeLines = edgeReader.readAll();
-            List<String[]> charLines = charReader.readAll();
+            List<String[]> edgeLines = CsvReader.readAll(edgeFileName);
+            List<String[]> charLines = CsvReader.readAll(charFileName);
 
             for (int i=1; i < charLines.size(); i++) {
                 String[] charLine = charLines.get(i);
@@ -592,7 +581,6 @@ public class WikiUpdater {
 
 
             List<String> charList = new ArrayList<String>(charSet);
-            String[] charLine = charReader.readNext();
 
             for (String character :charList) {
 
@@ -604,8 +592,6 @@ public class WikiUpdater {
                         charData[6].split(";")[0], charData[7].split(";")[0]});
             }
 
-            edgeReader.close();
-            charReader.close();
             nodeWriter.close();
 
 
@@ -36,4 +36,6 @@ public class ClashOfKingsConstructor extends MatrixConstructor {
 //    }
 
     public String getCharacterDataFileName() { return CHARACTER_DATA_FILE_NAME; }
+
+    public boolean writesLayout() { return true; }
 }
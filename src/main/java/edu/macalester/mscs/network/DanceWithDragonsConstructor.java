@@ -39,4 +39,6 @@ public class DanceWithDragonsConstructor extends MatrixConstructor {
     }
 
     public String getCharacterDataFileName() { return CHARACTER_DATA_FILE_NAME; }
+
+    public boolean writesLayout() { return true; }
 }
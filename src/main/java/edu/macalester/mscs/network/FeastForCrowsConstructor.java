@@ -33,4 +33,6 @@ public class FeastForCrowsConstructor extends MatrixConstructor {
     }
 
     public String getCharacterDataFileName() { return CHARACTER_DATA_FILE_NAME; }
+
+    public boolean writesLayout() { return true; }
 }
@@ -57,4 +57,6 @@ public class GameOfThronesConstructor extends MatrixConstructor {
 
     public String getCharacterDataFileName() { return CHARACTER_DATA_FILE_NAME; }
 
+    public boolean writesLayout() { return true; }
+
 }
@@ -1,9 +1,10 @@
 package edu.macalester.mscs.network;
 
-import edu.macalester.mscs.utils.FileUtils;
+import edu.macalester.mscs.utils.CsvReader;
 import edu.macalester.mscs.utils.Logger;
 import edu.macalester.mscs.utils.WordUtils;
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.*;
@@ -20,6 +21,7 @@ public class Matrix {
     private final List<Encounter> encounters;
 
     private boolean isModifiable = true;
+    private boolean isSnapshot = false;
 
     /**
      * Initializes an empty matrix
@@ -42,6 +44,24 @@ public class Matrix {
         this(characters.toArray(new String[characters.size()]), nameIndices);
     }
 
+    /**
+     * Copies the other matrix into a read-only snapshot
+     * @param other
+     */
+    private Matrix(Matrix other) {
+        this.characters = other.characters.clone();
+        this.nameIndices = Collections.unmodifiableMap(new HashMap<>(other.nameIndices));
+        this.matrix = new int[other.matrix.length][];
+        for (int i = 0; i < matrix.length; i++) {
+            this.matrix[i] = other.matrix[i].clone();
+        }
+        List<Encounter> sorted = new ArrayList<>(other.encounters);
+        Collections.sort(sorted);
+        this.encounters = Collections.unmodifiableList(sorted);
+        this.isModifiable = false;
+        this.isSnapshot = true;
+    }
+
     /**
      * Initializes a matrix and calls build(text, radius)
      * @param characters
@@ -49,7 +69,7 @@ public class Matrix {
      * @param text
      * @param radius
      */
-    public Matrix(String[] characters, Map<String, Integer> nameIndices, String text, int radius) {
+    public Matrix(String[] characters, Map<String, Integer> nameIndices, CharSequence text, int radius) {
         this(characters, nameIndices);
         build(text, radius);
     }
@@ -61,18 +81,82 @@ public class Matrix {
      * @param text
      * @param radius
      */
-    public Matrix(List<String> characters, Map<String, Integer> nameIndices, String text, int radius) {
+    public Matrix(List<String> characters, Map<String, Integer> nameIndices, CharSequence text, int radius) {
         this(characters, nameIndices);
         build(text, radius);
     }
 
     /**
-     * Builds the matrix from the text, given a maximum word radius for adjacency
+     * Reads a matrix back in from a matrix CSV file, as written by toMatrixCsvLog().
+     * The result has no encounters and can no longer be modified.
+     * @param matrixCsvFileName
+     * @return
+     */
+    public static Matrix fromMatrixCsv(String matrixCsvFileName) {
+        CsvReader reader = CsvReader.open(matrixCsvFileName);
+        if (!reader.next()) {
+            throw new IllegalArgumentException("Empty matrix file: " + matrixCsvFileName);
+        }
+        String[] characters = reader.toArray();
+        Map<String, Integer> nameIndices = new HashMap<>();
+        for (int i = 0; i < characters.length; i++) {
+            nameIndices.put(characters[i], i);
+        }
+        Matrix result = new Matrix(characters, nameIndices);
+        for (int i = 0; i < characters.length; i++) {
+            if (!reader.next() || reader.size() != characters.length) {
+                throw new IllegalArgumentException("Row " + i + " of " + matrixCsvFileName + " does not match the header");
+            }
+            for (int j = 0; j < characters.length; j++) {
+                result.matrix[i][j] = Integer.parseInt(reader.getString(j).trim());
+            }
+        }
+        result.isModifiable = false;
+        return result;
+    }
+
+    /**
+     * Combines several matrices, such as one per book, into a single matrix whose weights are the sums
+     * of the weights for each pair of characters. Characters are ordered by their first appearance.
+     * The result keeps all of the encounters and can no longer be modified.
+     * @param matrices
+     * @return
+     */
+    public static Matrix combine(List<Matrix> matrices) {
+        Map<String, Integer> nameIndices = new LinkedHashMap<>();
+        for (Matrix m : matrices) {
+            for (String character : m.characters) {
+                if (!nameIndices.containsKey(character)) {
+                    nameIndices.put(character, nameIndices.size());
+                }
+            }
+        }
+        String[] characters = nameIndices.keySet().toArray(new String[nameIndices.size()]);
+        Matrix result = new Matrix(characters, nameIndices);
+        for (Matrix m : matrices) {
+            int[] indices = new int[m.size()];
+            for (int i = 0; i < m.size(); i++) {
+                indices[i] = nameIndices.get(m.characters[i]);
+            }
+            for (int i = 0; i < m.size(); i++) {
+                for (int j = 0; j < m.size(); j++) {
+                    result.matrix[indices[i]][indices[j]] += m.matrix[i][j];
+                }
+            }
+            result.encounters.addAll(m.encounters);
+        }
+        result.isModifiable = false;
+        return result;
+    }
+
+    /**
+     * Builds the matrix from the text, given a maximum word radius for adjacency.
+     * The text is only read one character at a time, so it may be a view that is not held on the heap.
      *
      * @param text
      * @param radius
      */
-    public void build(String text, int radius) {
+    public void build(CharSequence text, int radius) {
         StringBuilder search = new StringBuilder();
         FixedQueue<String> nameQueue = new FixedQueue<>(radius);
         Queue<Name> backup = new LinkedList<>();
@@ -148,12 +232,47 @@ public class Matrix {
         }
     }
 
+    /**
+     * Returns an immutable copy of this matrix. The snapshot's encounters are sorted once up front,
+     * so it can be read from several threads at the same time.
+     * @return
+     */
+    public Matrix snapshot() {
+        return isSnapshot ? this : new Matrix(this);
+    }
+
+    /**
+     * Returns the characters, in matrix order. A snapshot returns a copy.
+     * @return
+     */
     public String[] getCharacters() {
-        return characters;
+        return isSnapshot ? characters.clone() : characters;
     }
 
+    /**
+     * Returns the co-occurrence counts. A snapshot returns a copy, so that it stays unchanged
+     * while other threads read it; use get to read single entries without copying.
+     * @return
+     */
     public int[][] getMatrix() {
-        return matrix;
+        if (!isSnapshot) {
+            return matrix;
+        }
+        int[][] copy = new int[matrix.length][];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = matrix[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the number of co-occurrences of two characters
+     * @param i
+     * @param j
+     * @return
+     */
+    public int get(int i, int j) {
+        return matrix[i][j];
     }
 
     /**
@@ -161,7 +280,9 @@ public class Matrix {
      * @return
      */
     public List<Encounter> getEncounterList() {
-        Collections.sort(encounters);
+        if (!isSnapshot) {
+            Collections.sort(encounters);
+        }
         return encounters;
     }
 
@@ -210,6 +331,9 @@ public class Matrix {
      * @param position
      */
     public void addEncounter(String name1, String name2, int position, String context) {
+        if (isSnapshot) {
+            throw new IllegalStateException("This matrix is a snapshot and cannot be modified.");
+        }
         if (!isModifiable) {
             throw new IllegalStateException("This matrix has been cleaned and can no longer be modified.");
         }
@@ -233,6 +357,7 @@ public class Matrix {
      * @return
      */
     public Logger cleanNoise(int noise) {
+        checkNotSnapshot();
         Logger logger = new Logger();
         logger.log("Removing noisy connections:");
         // clean noise
@@ -280,6 +405,7 @@ public class Matrix {
      * @return
      */
     public Logger cleanFloaters(int entryPoint) {
+        checkNotSnapshot();
         // get people without connections
         Set<Integer> floaters = new HashSet<>();
         for (int i = 0; i < size(); i++) {
@@ -307,6 +433,7 @@ public class Matrix {
      * @return
      */
     public Logger cleanSingletons() {
+        checkNotSnapshot();
         Logger logger = new Logger();
         // get people with only one connection
         Set<Integer> singletons = new HashSet<>();
@@ -333,6 +460,7 @@ public class Matrix {
      * @return
      */
     public Logger cleanSingletons(int iterations) {
+        checkNotSnapshot();
         Logger logger = new Logger();
         // get people with only one connection
         for (int n=0; n<iterations; n++) {
@@ -359,7 +487,15 @@ public class Matrix {
      * @return
      */
     public Logger toMatrixCsvLog() {
-        Logger logger = new Logger();
+        return toMatrixCsvLog(new Logger());
+    }
+
+    /**
+     * Logs the CSV lines of the matrix to the given logger, which may be streaming.
+     * @param logger
+     * @return the logger
+     */
+    public Logger toMatrixCsvLog(Logger logger) {
         logger.log(cleanArrayString(Arrays.toString(characters)));
         for (int[] row : matrix) {
             logger.log(cleanArrayString(Arrays.toString(row)));
@@ -375,7 +511,16 @@ public class Matrix {
      * @return
      */
     public Logger toMatrixJsonLog(String[] orderedCharacters) {
-        Logger logger = new Logger();
+        return toMatrixJsonLog(orderedCharacters, new Logger());
+    }
+
+    /**
+     * Logs the JSON matrix to the given logger, which may be streaming.
+     * @param orderedCharacters
+     * @param logger
+     * @return the logger
+     */
+    public Logger toMatrixJsonLog(String[] orderedCharacters, Logger logger) {
         String[] orderedChars = (orderedCharacters == null) ? getCharacters() : orderedCharacters;
         int length = orderedChars.length;
         int[][] newMatrix = new int[length][length];
@@ -431,7 +576,17 @@ public class Matrix {
      * @return
      */
     public Logger toEdgeListCsvLog(String header, String defaultValue) {
-        Logger logger = new Logger();
+        return toEdgeListCsvLog(header, defaultValue, new Logger());
+    }
+
+    /**
+     * Logs the edge list CSV lines to the given logger, which may be streaming.
+     * @param header
+     * @param defaultValue
+     * @param logger
+     * @return the logger
+     */
+    public Logger toEdgeListCsvLog(String header, String defaultValue, Logger logger) {
         logger.log(header);
         for (int i=0; i<size(); i++) {
             for (int j=i+1; j<size(); j++) {
@@ -448,32 +603,29 @@ public class Matrix {
     }
 
     public Logger toNodeListCsvLog(String charDataFileName) {
-        if (charDataFileName == null) {
-            Logger logger = new Logger();
+        return toNodeListCsvLog(charDataFileName, new Logger());
+    }
 
+    /**
+     * Logs the node list CSV lines to the given logger, which may be streaming.
+     * @param charDataFileName
+     * @param logger
+     * @return the logger
+     */
+    public Logger toNodeListCsvLog(String charDataFileName, Logger logger) {
+        if (charDataFileName == null) {
             logger.log("Error: character data file name is null");
 
             return logger;
         } else {
-            return toNodeListCsvLog("Id,Label,Allegiance,Royal House,Culture", "#ID,#LA,#AL,#RH,#C", charDataFileName);
+            return toNodeListCsvLog("Id,Label,Allegiance,Royal House,Culture", "#ID,#LA,#AL,#RH,#C", charDataFileName, logger);
         }
     }
 
-    private Logger toNodeListCsvLog(String header, String defaultValue, String charDataFileName) {
-        Logger logger = new Logger();
+    private Logger toNodeListCsvLog(String header, String defaultValue, String charDataFileName, Logger logger) {
         logger.log(header);
 
-        List<String> charLines = FileUtils.readFile(charDataFileName);
-
-        Map<String, String[]> fullCharMap = new HashMap<>();
-
-        System.out.println(charLines.get(0));
-
-        for (int i = 1; i < charLines.size(); i++) {
-            String[] charLine = charLines.get(i).split(",");
-            System.out.println("Adding character:" + charLine[0]);
-            fullCharMap.put(charLine[0], charLine);
-        }
+        Map<String, String[]> fullCharMap = readCharacterData(charDataFileName);
 
         for (String character : getCharacters()) {
 
@@ -506,7 +658,158 @@ public class Matrix {
         return logger;
     }
 
+    /**
+     * Converts the matrix to a GEXF 1.2 graph for direct import into Gephi.
+     * Nodes carry the label, allegiance, royal house and culture from the character data file,
+     * if one is given, and edges carry their weights.
+     * This is equivalent to calling toGexfLog(charDataFileName, 0, new Logger())
+     * @param charDataFileName may be null
+     * @return
+     */
+    public Logger toGexfLog(String charDataFileName) {
+        return toGexfLog(charDataFileName, 0, new Logger());
+    }
 
+    /**
+     * Logs the matrix as a GEXF 1.2 graph to the given logger, which may be streaming.
+     * If sliceLength is positive, the graph is dynamic: the text is divided into slices of
+     * sliceLength characters, each node starts at the slice of its first encounter, and each
+     * edge gets one weight per slice holding the number of encounters within that slice.
+     * Otherwise the graph is static and only the total weights are written.
+     * @param charDataFileName may be null
+     * @param sliceLength
+     * @param logger
+     * @return the logger
+     */
+    public Logger toGexfLog(String charDataFileName, int sliceLength, Logger logger) {
+        boolean dynamic = sliceLength > 0;
+        Map<String, String[]> fullCharMap = charDataFileName == null
+                ? new HashMap<String, String[]>()
+                : readCharacterData(charDataFileName);
+
+        // bucket the encounters of the surviving edges by slice, in a single pass
+        Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < size(); i++) {
+            indices.put(characters[i], i);
+        }
+        int[] firstSlice = new int[size()];
+        Arrays.fill(firstSlice, -1);
+        Map<Long, TreeMap<Integer, Integer>> edgeSlices = new HashMap<>();
+        if (dynamic) {
+            for (Encounter encounter : getEncounterList()) {
+                Integer i = indices.get(encounter.character1);
+                Integer j = indices.get(encounter.character2);
+                if (i != null && j != null && matrix[i][j] > 0) {
+                    int slice = encounter.position / sliceLength;
+                    if (firstSlice[i] < 0) {
+                        firstSlice[i] = slice;
+                    }
+                    if (firstSlice[j] < 0) {
+                        firstSlice[j] = slice;
+                    }
+                    long key = Math.min(i, j) * (long) size() + Math.max(i, j);
+                    TreeMap<Integer, Integer> slices = edgeSlices.get(key);
+                    if (slices == null) {
+                        slices = new TreeMap<>();
+                        edgeSlices.put(key, slices);
+                    }
+                    Integer count = slices.get(slice);
+                    slices.put(slice, count == null ? 1 : count + 1);
+                }
+            }
+        }
+
+        logger.log("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        logger.log("<gexf xmlns=\"http://www.gexf.net/1.2draft\" version=\"1.2\">");
+        logger.log(dynamic
+                ? "  <graph defaultedgetype=\"undirected\" mode=\"dynamic\" timeformat=\"double\">"
+                : "  <graph defaultedgetype=\"undirected\" mode=\"static\">");
+        logger.log("    <attributes class=\"node\" mode=\"static\">");
+        logger.log("      <attribute id=\"0\" title=\"Allegiance\" type=\"string\"/>");
+        logger.log("      <attribute id=\"1\" title=\"Royal House\" type=\"string\"/>");
+        logger.log("      <attribute id=\"2\" title=\"Culture\" type=\"string\"/>");
+        logger.log("    </attributes>");
+        if (dynamic) {
+            // the per-slice weights below are values of this attribute, which Gephi reads as the dynamic weight
+            logger.log("    <attributes class=\"edge\" mode=\"dynamic\">");
+            logger.log("      <attribute id=\"weight\" title=\"Weight\" type=\"double\"/>");
+            logger.log("    </attributes>");
+        }
+
+        logger.log("    <nodes>");
+        for (int i = 0; i < size(); i++) {
+            String[] charData = fullCharMap.get(characters[i]);
+            String label = (charData != null && charData.length > 1) ? charData[1] : characters[i];
+            String start = (dynamic && firstSlice[i] >= 0)
+                    ? " start=\"" + (double) firstSlice[i] * sliceLength + "\"" : "";
+            logger.log("      <node id=\"" + xml(characters[i]) + "\" label=\"" + xml(label) + "\"" + start + ">");
+            logger.log("        <attvalues>");
+            logger.log("          <attvalue for=\"0\" value=\"" + xml(getField(charData, 5)) + "\"/>");
+            logger.log("          <attvalue for=\"1\" value=\"" + xml(getField(charData, 6)) + "\"/>");
+            logger.log("          <attvalue for=\"2\" value=\"" + xml(getField(charData, 7)) + "\"/>");
+            logger.log("        </attvalues>");
+            logger.log("      </node>");
+        }
+        logger.log("    </nodes>");
+
+        logger.log("    <edges>");
+        int edgeId = 0;
+        for (int i = 0; i < size(); i++) {
+            for (int j = i + 1; j < size(); j++) {
+                if (matrix[i][j] > 0) {
+                    String edge = "      <edge id=\"" + edgeId++ + "\" source=\"" + xml(characters[i])
+                            + "\" target=\"" + xml(characters[j]) + "\" weight=\"" + (double) matrix[i][j] + "\"";
+                    TreeMap<Integer, Integer> slices = edgeSlices.get(i * (long) size() + j);
+                    if (slices == null) {
+                        logger.log(edge + "/>");
+                    } else {
+                        logger.log(edge + " start=\"" + (double) slices.firstKey() * sliceLength + "\">");
+                        logger.log("        <attvalues>");
+                        for (Map.Entry<Integer, Integer> slice : slices.entrySet()) {
+                            logger.log("          <attvalue for=\"weight\" value=\"" + (double) slice.getValue()
+                                    + "\" start=\"" + (double) slice.getKey() * sliceLength
+                                    + "\" endopen=\"" + (double) (slice.getKey() + 1) * sliceLength + "\"/>");
+                        }
+                        logger.log("        </attvalues>");
+                        logger.log("      </edge>");
+                    }
+                }
+            }
+        }
+        logger.log("    </edges>");
+        logger.log("  </graph>");
+        logger.log("</gexf>");
+        return logger;
+    }
+
+    /**
+     * Reads the character data CSV into a map from character id to its fields
+     * @param charDataFileName
+     * @return
+     */
+    public static Map<String, String[]> readCharacterData(String charDataFileName) {
+        CsvReader reader = CsvReader.open(charDataFileName);
+        Map<String, String[]> fullCharMap = new HashMap<>();
+        reader.next(); // skip the header
+        while (reader.next()) {
+            fullCharMap.put(reader.getString(0), reader.toArray());
+        }
+        return fullCharMap;
+    }
+
+    private static String getField(String[] charData, int index) {
+        return (charData != null && charData.length > index) ? charData[index] : "";
+    }
+
+    private static String xml(String value) {
+        return StringEscapeUtils.escapeXml10(value);
+    }
+
+    private void checkNotSnapshot() {
+        if (isSnapshot) {
+            throw new IllegalStateException("This matrix is a snapshot and cannot be cleaned.");
+        }
+    }
 
     private static String cleanArrayString(String arrayString) {
         return StringUtils.strip(arrayString, "[]").replaceAll(" ", "");
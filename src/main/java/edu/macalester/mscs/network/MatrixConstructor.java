@@ -1,26 +1,47 @@
 package edu.macalester.mscs.network;
 
+import edu.macalester.mscs.centrality.CsrGraph;
+import edu.macalester.mscs.centrality.ForceAtlas2;
+import edu.macalester.mscs.centrality.LabelPropagation;
+import edu.macalester.mscs.centrality.Louvain;
+import edu.macalester.mscs.centrality.NetworkSummary;
+import edu.macalester.mscs.utils.CsvReader;
 import edu.macalester.mscs.utils.EntryComparator;
 import edu.macalester.mscs.utils.FileUtils;
 import edu.macalester.mscs.utils.Logger;
+import edu.macalester.mscs.utils.MappedText;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.*;
 
 public class MatrixConstructor {
 
     public static final String DEFAULT_LOG_FOLDER = "src/main/resources/data/output";
 
+	/**
+	 * How getOrderedCharacters() orders the characters when it is not overridden
+	 */
+	public enum CharacterOrdering {
+		/** the order of the matrix itself */
+		NONE,
+		/** grouped by Louvain communities */
+		LOUVAIN,
+		/** grouped by label propagation communities, which is much faster, for previews */
+		LABEL_PROPAGATION
+	}
+
 	private final String bookId;
-	private final String text;
+	private final CharSequence text;
 	private List<String> fullCharacterList;
 	private Map<String, Integer> nameIndices;
 	private int radius;
 	private int noise;
 	private Matrix matrix = null;
+	private CharacterOrdering characterOrdering = CharacterOrdering.NONE;
 	//private String logFolderName;
 
     /**
@@ -33,7 +54,7 @@ public class MatrixConstructor {
 	 */
     public MatrixConstructor(String bookId, String textFileName, String characterFileName, int radius, int noise) {
 		this.bookId = bookId;
-		this.text = getText(textFileName);
+		this.text = MappedText.openJoinedLines(textFileName);
 		makeCharacters(characterFileName);
 		this.radius = radius;
 		this.noise = noise;
@@ -53,20 +74,78 @@ public class MatrixConstructor {
 		return bookId;
 	}
 
+	/**
+	 * Returns the text of the book, with its lines trimmed and joined by spaces.
+	 * This copies the text into a String; getTextSequence does not.
+	 * @return
+	 */
 	public String getText() {
+		return text.toString();
+	}
+
+	/**
+	 * Returns the text of the book, as getText does, but as a view of the file rather than a String
+	 * @return
+	 */
+	public CharSequence getTextSequence() {
 		return text;
 	}
 
     /**
      * Override this method if you want to specify a different order for the JSON file creation.
      * This list must match the characters that actually appear in the network (and is a subset of the
-     * full list of characters).
-     * @return null
+     * full list of characters). By default the order is given by the character ordering, and is null
+     * for CharacterOrdering.NONE.
+     * @return
      */
     public String[] getOrderedCharacters() {
-        return null;
+		if (matrix == null) {
+			return null;
+		}
+		switch (characterOrdering) {
+			case LOUVAIN:
+				return getCommunityOrderedCharacters(Louvain.DEFAULT_RESOLUTION);
+			case LABEL_PROPAGATION:
+				return new LabelPropagation(CsrGraph.fromMatrix(matrix)).getOrderedCharacters();
+			default:
+				return null;
+		}
     }
 
+	public CharacterOrdering getCharacterOrdering() {
+		return characterOrdering;
+	}
+
+	public void setCharacterOrdering(CharacterOrdering characterOrdering) {
+		this.characterOrdering = characterOrdering;
+	}
+
+	/**
+	 * Returns the characters of the constructed matrix grouped by their Louvain communities,
+	 * strongest community first. An override of getOrderedCharacters() can return this
+	 * instead of a hand-curated list.
+	 * @param resolution higher values give more and smaller communities, 1 is standard modularity
+	 * @return
+	 */
+	public String[] getCommunityOrderedCharacters(double resolution) {
+		if (matrix == null) {
+			throw new IllegalStateException("The matrix has not been constructed");
+		}
+		return new Louvain(CsrGraph.fromMatrix(matrix), resolution).getOrderedCharacters();
+	}
+
+	/**
+	 * Returns the network-level statistics of the constructed matrix, with the average path length
+	 * sampled from NetworkSummary.DEFAULT_PATH_SAMPLES sources
+	 * @return
+	 */
+	public NetworkSummary getNetworkSummary() {
+		if (matrix == null) {
+			throw new IllegalStateException("The matrix has not been constructed");
+		}
+		return new NetworkSummary(CsrGraph.fromMatrix(matrix)).compute();
+	}
+
 	/**
 	 * Override this method if you want to create a CSV for the nodes with additional attributes
 	 * TODO make this abstract to force the user to implement it
@@ -74,6 +153,20 @@ public class MatrixConstructor {
      */
 	public String getCharacterDataFileName() { return null; }
 
+	/**
+	 * Override this method to write the GEXF graph in dynamic mode, with time slices of
+	 * the returned number of characters of text. A value of 0 writes a static graph.
+	 * @return 0
+	 */
+	public int getGexfSliceLength() { return 0; }
+
+	/**
+	 * Override this method to also write the ForceAtlas2 layout of each run next to the
+	 * edge file, which costs a layout simulation on top of the other files.
+	 * @return false
+	 */
+	public boolean writesLayout() { return false; }
+
 	public List<String> getFullCharacterList() {
 		return fullCharacterList;
 	}
@@ -83,15 +176,16 @@ public class MatrixConstructor {
 	}
 
 	public void makeCharacters(String characterFileName) {
-		List<String> lines = FileUtils.readFile(characterFileName);
+		CsvReader reader = CsvReader.open(characterFileName);
 		fullCharacterList = new ArrayList<>();
 		nameIndices = new HashMap<>();
-		for (String c : lines) {
-			String[] split = c.split(",");
-			for (String name : split) {
-				nameIndices.put(name, fullCharacterList.size());
+		while (reader.next()) {
+			for (int i = 0; i < reader.size(); i++) {
+				if (!reader.isEmpty(i)) {
+					nameIndices.put(reader.getString(i), fullCharacterList.size());
+				}
 			}
-			c = split[0];
+			String c = reader.getString(0);
 			c = c.replaceAll(" [a-z]+ ", " "); // remove lowercase filler words
 			if (c.contains(" ")) {
 				c = c.substring(0, c.indexOf(' ') + 2);
@@ -186,47 +280,191 @@ public class MatrixConstructor {
 	 * Writes the data in matrix to a set of files. These files are:
 	 *  - matrix file
 	 *  - edge file
+	 *  - layout file
 	 *  - total encounter list
 	 *  - encounter lists by character
+	 *  - GEXF graph file
+	 *  - network summary
 	 * The files will be descriptively named and placed within parentFolder,
 	 * with the encounter files placed in their own subdirectory.
+	 *
+	 * Each file is written by its own task from an immutable snapshot of the matrix,
+	 * streaming straight to disk, so the total time is that of the slowest file.
 	 * @param logFolder
 	 */
-    public void writeFiles(String fileDescriptor, String logFolder, boolean encounterListsByCharacter) {
+    public void writeFiles(String fileDescriptor, String logFolder, final boolean encounterListsByCharacter) {
 		if (matrix == null) {
 			throw new IllegalStateException("The matrix has not been constructed");
 		}
 
+		final Matrix snapshot = matrix.snapshot();
+		final String charDataFileName = getCharacterDataFileName();
+		final String[] orderedCharacters = getOrderedCharacters();
+
+		final String encountersFile = getFileName(logFolder, "encounters", fileDescriptor, "csv");
+		final String encountersFolder = encounterListsByCharacter ? getFileName(logFolder, "encounters", fileDescriptor) : null;
+		final String matrixCsvFile = getFileName(logFolder, "mat",  fileDescriptor, "csv");
+		final String edgeFile = getFileName(logFolder, "edge",  fileDescriptor, "csv");
+		final String nodeFile = getFileName(logFolder, "node",  fileDescriptor, "csv");
+		final String matrixJsonFile = getFileName(logFolder, "mat",  fileDescriptor, "json");
+		final String gexfFile = getFileName(logFolder, "graph",  fileDescriptor, "gexf");
+		final String summaryFile = getFileName(logFolder, "summary",  fileDescriptor, "txt");
+		final String layoutFile = getFileName(logFolder, "layout",  fileDescriptor, "csv");
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+
 		// write encounters file
-		Logger logger = new Logger();
-		logger.log("char 1, char2, index, text");
-		logger.log(matrix.getEncounterList());
-		logger.writeLog(getFileName(logFolder, "encounters", fileDescriptor, "csv"));
-		if (encounterListsByCharacter) { // optional
-			String encountersFolder = getFileName(logFolder, "encounters", fileDescriptor);
-
-			for (String name : matrix.getCharacters()) {
-                logger.clear();
-                logger.log(name + " Encounters:");
-                logger.log(matrix.getEncounterList(name));
-                logger.writeLog(encountersFolder + '/' + name.replace(' ', '_') + ".csv");
-            }
-		}
+		tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() {
+				Logger logger = Logger.toFile(encountersFile);
+				try {
+					logger.log("char 1, char2, index, text");
+					logger.log(snapshot.getEncounterList());
+					logger.commit();
+				} finally {
+					logger.close();
+				}
+				if (encounterListsByCharacter) { // optional
+					for (String name : snapshot.getCharacters()) {
+						Logger charLogger = Logger.toFile(encountersFolder + '/' + name.replace(' ', '_') + ".csv");
+						try {
+							charLogger.log(name + " Encounters:");
+							charLogger.log(snapshot.getEncounterList(name));
+							charLogger.commit();
+						} finally {
+							charLogger.close();
+						}
+					}
+				}
+				return null;
+			}
+		});
+
 		// write matrix CSV file
-		matrix.toMatrixCsvLog().writeLog(getFileName(logFolder, "mat",  fileDescriptor, "csv"));
+		tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() {
+				Logger logger = Logger.toFile(matrixCsvFile);
+				try {
+					snapshot.toMatrixCsvLog(logger);
+					logger.commit();
+				} finally {
+					logger.close();
+				}
+				return null;
+			}
+		});
 
 		// write edge file
-		matrix.toEdgeListCsvLog().writeLog(getFileName(logFolder, "edge",  fileDescriptor, "csv"));
+		tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() {
+				Logger logger = Logger.toFile(edgeFile);
+				try {
+					snapshot.toEdgeListCsvLog("Source,Target,Weight,Type", "#C1,#C2,#W,undirected", logger);
+					logger.commit();
+				} finally {
+					logger.close();
+				}
+				return null;
+			}
+		});
 
 		// write node file
-		if (getCharacterDataFileName() != null) {
-			matrix.toNodeListCsvLog(getCharacterDataFileName()).writeLog(getFileName(logFolder, "node",  fileDescriptor, "csv"));
+		if (charDataFileName != null) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					Logger logger = Logger.toFile(nodeFile);
+					try {
+						snapshot.toNodeListCsvLog(charDataFileName, logger);
+						logger.commit();
+					} finally {
+						logger.close();
+					}
+					return null;
+				}
+			});
 		}
 
-		// write matrix JSON file
-        matrix.toMatrixJsonLog(getOrderedCharacters()).writeLog(getFileName(logFolder, "mat",  fileDescriptor, "json"));
+		// write layout file, the ForceAtlas2 coordinates of each character for the edge file
+		if (writesLayout()) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					ForceAtlas2 layout = new ForceAtlas2(snapshot).compute();
+					Logger logger = Logger.toFile(layoutFile);
+					try {
+						layout.toCsvLog(logger);
+						logger.commit();
+					} finally {
+						logger.close();
+					}
+					return null;
+				}
+			});
+		}
 
+		// write matrix JSON file
+		tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() {
+				Logger logger = Logger.toFile(matrixJsonFile);
+				try {
+					snapshot.toMatrixJsonLog(orderedCharacters, logger);
+					logger.commit();
+				} finally {
+					logger.close();
+				}
+				return null;
+			}
+		});
+
+		// write GEXF graph file, which Gephi loads directly with node attributes
+		tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() {
+				Logger logger = Logger.toFile(gexfFile);
+				try {
+					snapshot.toGexfLog(charDataFileName, getGexfSliceLength(), logger);
+					logger.commit();
+				} finally {
+					logger.close();
+				}
+				return null;
+			}
+		});
+
+		// write network summary
+		tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() {
+				NetworkSummary summary = new NetworkSummary(CsrGraph.fromMatrix(snapshot)).compute();
+				Logger logger = Logger.toFile(summaryFile);
+				try {
+					summary.toLog(logger);
+					logger.commit();
+				} finally {
+					logger.close();
+				}
+				return null;
+			}
+		});
 
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Error writing files for " + getBookId(), e.getCause());
+		} finally {
+			executor.shutdown();
+		}
 	}
 
 	/**
@@ -280,19 +518,4 @@ public class MatrixConstructor {
 		return parentFolder + "/" + getBookId() + "-" + type + descriptor + extension;
 	}
 
-	/**
-	 * This method reads in a massive text file and combines it into a single string,
-	 * with line breaks replaced by spaces.
-	 * @param file
-	 * @return
-	 */
-	private static String getText(String file) {
-		List<String> lines = FileUtils.readFile(file);
-		StringBuilder sb = new StringBuilder();
-		for (String line : lines) {
-			sb.append(line).append(" ");
-		}
-		return sb.toString().trim();
-	}
-
 }
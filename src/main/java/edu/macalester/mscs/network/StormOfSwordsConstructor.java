@@ -33,5 +33,7 @@ public class StormOfSwordsConstructor extends MatrixConstructor {
 
     public String getCharacterDataFileName() { return CHARACTER_DATA_FILE_NAME; }
 
+    public boolean writesLayout() { return true; }
+
 
 }
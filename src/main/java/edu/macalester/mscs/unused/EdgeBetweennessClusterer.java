@@ -1,7 +1,7 @@
 package edu.macalester.mscs.unused;
 
-import edu.uci.ics.jung.algorithms.cluster.WeakComponentClusterer;
-import edu.uci.ics.jung.algorithms.scoring.BetweennessCentrality;
+import edu.macalester.mscs.centrality.Betweenness;
+import edu.macalester.mscs.centrality.CsrGraph;
 import edu.uci.ics.jung.graph.Graph;
 import edu.uci.ics.jung.graph.util.Pair;
 
@@ -9,6 +9,15 @@ import java.util.*;
 
 /**
  * Modified version of the same class of JUNG for weighted-edge scoring.
+ *
+ * Girvan-Newman clustering: the edge with the highest betweenness is removed, again and again,
+ * and the clusters are the connected components that remain. Shortest paths use the inverse
+ * weights as lengths, so heavy edges are short, as in the centrality package. Removing an edge only
+ * changes the betweenness inside its own component, so only that component, or the two it splits
+ * into, is recomputed after each removal, rather than the whole graph.
+ *
+ * The removals are recorded as a Dendrogram, from which the clusters after any number of removals
+ * can be read back in linear time without recomputing anything.
  * @author Jie Shan
  */
 public class EdgeBetweennessClusterer<V,E> {
@@ -32,55 +41,454 @@ public class EdgeBetweennessClusterer<V,E> {
     /**
     * Finds the set of clusters which have the strongest "community structure".
     * The more edges removed the smaller and more cohesive the clusters.
+    * The graph is not modified.
     * @param graph the graph
+    * @param weights the weight of each edge, or null to weight them all 1
     */
-    public Set<Set<V>> transform(Graph<V, E> graph, HashMap<E, Double> weights) {
-                
+    public Set<Set<V>> transform(Graph<V, E> graph, Map<E, Double> weights) {
         if (numEdgesToRemove > graph.getEdgeCount()) {
             throw new IllegalArgumentException("Graph does not contain enough edges to remove.");
         }
+        Dendrogram<V, E> dendrogram = computeDendrogram(graph, weights, numEdgesToRemove);
 
         edgesRemoved.clear();
-
-        for (int k=0;k< numEdgesToRemove;k++) {
-            BetweennessCentrality<V,E> bc = new BetweennessCentrality<>(graph);
-            E toRemove = null;
-            double score = 0;
-            for (E e : graph.getEdges()){
-            	double newScore = bc.getEdgeScore(e);
-//                if (newScore*1.0/weights.get(e) > score) {
-                if (newScore > score) {
-                    toRemove = e;
-                    score = newScore;
-                }
-            }
-            edgesRemoved.put(toRemove, graph.getEndpoints(toRemove));
-            graph.removeEdge(toRemove);
+        for (E e : dendrogram.getEdgesRemoved(numEdgesToRemove)) {
+            edgesRemoved.put(e, graph.getEndpoints(e));
         }
-
-        WeakComponentClusterer<V,E> wcSearch = new WeakComponentClusterer<>();
-        Set<Set<V>> clusterSet = wcSearch.transform(graph);
-
-        for (Map.Entry<E, Pair<V>> entry : edgesRemoved.entrySet())
-        {
-            Pair<V> endpoints = entry.getValue();
-            graph.addEdge(entry.getKey(), endpoints.getFirst(), endpoints.getSecond());
-        }
-        return clusterSet;
+        return dendrogram.getClusters(numEdgesToRemove);
     }
 
     /**
-     * Retrieves the list of all edges that were removed 
-     * (assuming extract(...) was previously called).  
+     * Retrieves the list of all edges that were removed
+     * (assuming extract(...) was previously called).
      * The edges returned
      * are stored in order in which they were removed.
-     * 
+     *
      * @return the edges in the original graph
      */
-    public List<E> getEdgesRemoved() 
+    public List<E> getEdgesRemoved()
     {
         return new ArrayList<>(edgesRemoved.keySet());
     }
 
-}
+    /**
+     * Removes every edge, recording the whole hierarchy
+     * @param graph
+     * @param weights the weight of each edge, or null to weight them all 1
+     * @return
+     */
+    public static <V,E> Dendrogram<V,E> computeDendrogram(Graph<V, E> graph, Map<E, Double> weights) {
+        return computeDendrogram(graph, weights, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes edges until maxRemovals have been removed or none are left, recording the hierarchy.
+     * Self loops are never removed, as no shortest path uses them.
+     * @param graph
+     * @param weights the weight of each edge, or null to weight them all 1
+     * @param maxRemovals
+     * @return
+     */
+    public static <V,E> Dendrogram<V,E> computeDendrogram(Graph<V, E> graph, Map<E, Double> weights, int maxRemovals) {
+        return computeDendrogram(graph, weights, maxRemovals, null);
+    }
+
+    /**
+     * Removes edges until maxRemovals have been removed or none are left, recording the hierarchy,
+     * and reports each removal to the listener on the calling thread
+     * @param graph
+     * @param weights the weight of each edge, or null to weight them all 1
+     * @param maxRemovals
+     * @param listener may be null
+     * @return
+     */
+    public static <V,E> Dendrogram<V,E> computeDendrogram(Graph<V, E> graph, Map<E, Double> weights, int maxRemovals,
+                                                         ProgressListener listener) {
+        return new Girvan<>(graph, weights).run(maxRemovals, listener);
+    }
+
+    /**
+     * Told after each removal while a dendrogram is computed, so that long runs can show progress
+     */
+    public interface ProgressListener {
+        /**
+         * @param removed the number of edges removed so far
+         * @param total the number that will have been removed at the end
+         */
+        void edgeRemoved(int removed, int total);
+    }
+
+    /**
+     * The order in which the edges were removed, and the components after each removal,
+     * stored as a binary tree of merges: reading the removals backwards, each edge that joins two
+     * components makes a node whose children are those components. The components after m removals
+     * are then the subtrees whose joining edge was removed at step m or later, or never.
+     */
+    public static class Dendrogram<V,E> {
+        private final List<V> vertices;
+        private final List<E> removed;
+        private final int[] left; // children of internal node n + i
+        private final int[] right;
+        private final int[] steps; // the removal that splits internal node n + i, or MAX_VALUE
+        private final int[] roots;
+
+        Dendrogram(List<V> vertices, List<E> removed, int[] left, int[] right, int[] steps, int[] roots) {
+            this.vertices = vertices;
+            this.removed = removed;
+            this.left = left;
+            this.right = right;
+            this.steps = steps;
+            this.roots = roots;
+        }
+
+        /**
+         * Returns the number of edges that were removed, which is the largest meaningful cut
+         * @return
+         */
+        public int getRemovalCount() {
+            return removed.size();
+        }
+
+        /**
+         * Returns the first count removed edges, in the order they were removed
+         * @param count
+         * @return
+         */
+        public List<E> getEdgesRemoved(int count) {
+            return Collections.unmodifiableList(removed.subList(0, Math.min(count, removed.size())));
+        }
+
+        /**
+         * Returns the cluster of each vertex after the given number of removals,
+         * numbered from 0, indexed like getVertices()
+         * @param numEdgesRemoved
+         * @return
+         */
+        public int[] getMembership(int numEdgesRemoved) {
+            int n = vertices.size();
+            int[] membership = new int[n];
+            int cluster = 0;
+            int[] stack = new int[2 * n];
+            for (int root : roots) {
+                // the root is one cluster unless it is split by this cut
+                int size = 0;
+                stack[size++] = root;
+                while (size > 0) {
+                    int node = stack[--size];
+                    if (node >= n && steps[node - n] < numEdgesRemoved) {
+                        stack[size++] = right[node - n];
+                        stack[size++] = left[node - n];
+                    } else {
+                        label(node, cluster++, membership, stack, size);
+                    }
+                }
+            }
+            return membership;
+        }
+
+        /**
+         * Returns the clusters after the given number of removals
+         * @param numEdgesRemoved
+         * @return
+         */
+        public Set<Set<V>> getClusters(int numEdgesRemoved) {
+            int[] membership = getMembership(numEdgesRemoved);
+            List<Set<V>> clusters = new ArrayList<>();
+            for (int v = 0; v < membership.length; v++) {
+                while (clusters.size() <= membership[v]) {
+                    clusters.add(new LinkedHashSet<V>());
+                }
+                clusters.get(membership[v]).add(vertices.get(v));
+            }
+            return new LinkedHashSet<>(clusters);
+        }
+
+        public List<V> getVertices() {
+            return Collections.unmodifiableList(vertices);
+        }
+
+        /**
+         * Labels every leaf under node, using the stack above the given size as scratch space
+         */
+        private void label(int node, int cluster, int[] membership, int[] stack, int base) {
+            int n = vertices.size();
+            int size = base;
+            stack[size++] = node;
+            while (size > base) {
+                int current = stack[--size];
+                if (current < n) {
+                    membership[current] = cluster;
+                } else {
+                    stack[size++] = right[current - n];
+                    stack[size++] = left[current - n];
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of one run: the graph as arrays, which edges are left, the component of each
+     * vertex, and the current betweenness of each edge.
+     */
+    private static class Girvan<V,E> {
 
+        private static final double TIE_TOLERANCE = 1e-10;
+
+        private final List<V> vertices;
+        private final List<E> edges;
+        private final int[] sources;
+        private final int[] targets;
+        private final double[] weights;
+        private final int[][] incident; // edges of each vertex, by increasing other end
+
+        private final boolean[] live;
+        private final int[] components;
+        private final double[] scores;
+        private int componentCount = 0;
+
+        Girvan(Graph<V, E> graph, Map<E, Double> weightMap) {
+            vertices = new ArrayList<>(graph.getVertices());
+            Map<V, Integer> indices = new HashMap<>();
+            for (int v = 0; v < vertices.size(); v++) {
+                indices.put(vertices.get(v), v);
+            }
+            edges = new ArrayList<>();
+            for (E e : graph.getEdges()) {
+                Pair<V> ends = graph.getEndpoints(e);
+                if (!ends.getFirst().equals(ends.getSecond())) {
+                    edges.add(e);
+                }
+            }
+            int m = edges.size();
+            sources = new int[m];
+            targets = new int[m];
+            weights = new double[m];
+            final int[] degrees = new int[vertices.size()];
+            Set<Long> pairs = new HashSet<>();
+            for (int e = 0; e < m; e++) {
+                Pair<V> ends = graph.getEndpoints(edges.get(e));
+                sources[e] = indices.get(ends.getFirst());
+                targets[e] = indices.get(ends.getSecond());
+                int low = Math.min(sources[e], targets[e]);
+                int high = Math.max(sources[e], targets[e]);
+                if (!pairs.add((long) low * vertices.size() + high)) {
+                    throw new IllegalArgumentException("Parallel edges are not supported: " + edges.get(e));
+                }
+                Double weight = weightMap == null ? null : weightMap.get(edges.get(e));
+                weights[e] = weight == null ? 1 : weight;
+                if (weights[e] <= 0) {
+                    throw new IllegalArgumentException("Edge " + edges.get(e) + " has weight " + weights[e]);
+                }
+                degrees[sources[e]]++;
+                degrees[targets[e]]++;
+            }
+            incident = new int[vertices.size()][];
+            for (int v = 0; v < incident.length; v++) {
+                incident[v] = new int[degrees[v]];
+                degrees[v] = 0;
+            }
+            for (int e = 0; e < m; e++) {
+                incident[sources[e]][degrees[sources[e]]++] = e;
+                incident[targets[e]][degrees[targets[e]]++] = e;
+            }
+            for (int v = 0; v < incident.length; v++) {
+                sortByOtherEnd(v);
+            }
+
+            live = new boolean[m];
+            Arrays.fill(live, true);
+            components = new int[vertices.size()];
+            Arrays.fill(components, -1);
+            scores = new double[m];
+        }
+
+        Dendrogram<V,E> run(int maxRemovals, ProgressListener listener) {
+            int n = vertices.size();
+            int total = Math.min(maxRemovals, edges.size());
+            int[] members = new int[n];
+            for (int v = 0; v < n; v++) {
+                if (components[v] < 0) {
+                    int size = collect(v, componentCount++, members);
+                    score(members, size);
+                }
+            }
+
+            List<E> removed = new ArrayList<>();
+            int[] order = new int[edges.size()];
+            while (removed.size() < maxRemovals) {
+                // the first of the edges with the highest betweenness, ignoring rounding differences
+                int best = -1;
+                for (int e = 0; e < edges.size(); e++) {
+                    if (live[e] && (best < 0 || scores[e] > scores[best] * (1 + TIE_TOLERANCE))) {
+                        best = e;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                order[removed.size()] = best;
+                removed.add(edges.get(best));
+                live[best] = false;
+
+                // rescore the component of the edge, which may have split in two
+                int size = collect(sources[best], componentCount++, members);
+                score(members, size);
+                if (components[targets[best]] != components[sources[best]]) {
+                    size = collect(targets[best], componentCount++, members);
+                    score(members, size);
+                }
+                if (listener != null) {
+                    listener.edgeRemoved(removed.size(), total);
+                }
+            }
+            return buildDendrogram(removed, order);
+        }
+
+        /**
+         * Labels the component of the vertex, over the live edges, and lists its vertices in increasing order
+         * @return the number of vertices
+         */
+        private int collect(int start, int label, int[] members) {
+            int size = 0;
+            members[size++] = start;
+            components[start] = label;
+            for (int i = 0; i < size; i++) {
+                int u = members[i];
+                for (int e : incident[u]) {
+                    int v = other(e, u);
+                    if (live[e] && components[v] != label) {
+                        components[v] = label;
+                        members[size++] = v;
+                    }
+                }
+            }
+            Arrays.sort(members, 0, size);
+            return size;
+        }
+
+        /**
+         * Computes the betweenness of the live edges among the given vertices
+         */
+        private void score(int[] members, int size) {
+            if (size < 2) {
+                return;
+            }
+            Map<Integer, Integer> local = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                local.put(members[i], i);
+            }
+            String[] names = new String[size];
+            int[] offsets = new int[size + 1];
+            for (int i = 0; i < size; i++) {
+                names[i] = String.valueOf(members[i]);
+                int degree = 0;
+                for (int e : incident[members[i]]) {
+                    if (live[e]) {
+                        degree++;
+                    }
+                }
+                offsets[i + 1] = offsets[i] + degree;
+            }
+            int[] neighbors = new int[offsets[size]];
+            double[] edgeWeights = new double[offsets[size]];
+            int[] slotEdges = new int[offsets[size]];
+            for (int i = 0; i < size; i++) {
+                int k = offsets[i];
+                // incident edges are sorted by their other end, and local indices follow global ones
+                for (int e : incident[members[i]]) {
+                    if (live[e]) {
+                        neighbors[k] = local.get(other(e, members[i]));
+                        edgeWeights[k] = weights[e];
+                        slotEdges[k] = e;
+                        k++;
+                    }
+                }
+            }
+            double[] betweenness = new Betweenness(new CsrGraph(names, offsets, neighbors, edgeWeights), true)
+                    .getEdgeBetweenness();
+            for (int k = 0; k < slotEdges.length; k++) {
+                scores[slotEdges[k]] = betweenness[k];
+            }
+        }
+
+        private Dendrogram<V,E> buildDendrogram(List<E> removed, int[] order) {
+            int n = vertices.size();
+            int[] parents = new int[n];
+            int[] nodes = new int[n]; // the tree node of each union-find root
+            for (int v = 0; v < n; v++) {
+                parents[v] = v;
+                nodes[v] = v;
+            }
+            int[] left = new int[Math.max(n - 1, 0)];
+            int[] right = new int[Math.max(n - 1, 0)];
+            int[] steps = new int[Math.max(n - 1, 0)];
+            int merges = 0;
+
+            // edges that were never removed join first, then the removed ones from last to first
+            int[] joins = new int[edges.size()];
+            int[] joinSteps = new int[edges.size()];
+            int count = 0;
+            for (int e = 0; e < edges.size(); e++) {
+                if (live[e]) {
+                    joinSteps[count] = Integer.MAX_VALUE;
+                    joins[count++] = e;
+                }
+            }
+            for (int i = removed.size() - 1; i >= 0; i--) {
+                joinSteps[count] = i;
+                joins[count++] = order[i];
+            }
+            for (int j = 0; j < count; j++) {
+                int a = find(parents, sources[joins[j]]);
+                int b = find(parents, targets[joins[j]]);
+                if (a != b) {
+                    left[merges] = nodes[a];
+                    right[merges] = nodes[b];
+                    steps[merges] = joinSteps[j];
+                    parents[b] = a;
+                    nodes[a] = n + merges;
+                    merges++;
+                }
+            }
+            List<Integer> roots = new ArrayList<>();
+            for (int v = 0; v < n; v++) {
+                if (find(parents, v) == v) {
+                    roots.add(nodes[v]);
+                }
+            }
+            int[] rootArray = new int[roots.size()];
+            for (int i = 0; i < rootArray.length; i++) {
+                rootArray[i] = roots.get(i);
+            }
+            return new Dendrogram<>(vertices, removed, left, right, steps, rootArray);
+        }
+
+        private int other(int e, int v) {
+            return sources[e] == v ? targets[e] : sources[e];
+        }
+
+        private void sortByOtherEnd(final int v) {
+            Integer[] boxed = new Integer[incident[v].length];
+            for (int i = 0; i < boxed.length; i++) {
+                boxed[i] = incident[v][i];
+            }
+            Arrays.sort(boxed, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Integer.compare(other(a, v), other(b, v));
+                }
+            });
+            for (int i = 0; i < boxed.length; i++) {
+                incident[v][i] = boxed[i];
+            }
+        }
+
+        private static int find(int[] parents, int v) {
+            while (parents[v] != v) {
+                parents[v] = parents[parents[v]];
+                v = parents[v];
+            }
+            return v;
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package edu.macalester.mscs.unused;
 
+import edu.macalester.mscs.centrality.CsrGraph;
+import edu.macalester.mscs.centrality.ForceAtlas2;
 import edu.uci.ics.jung.algorithms.layout.AggregateLayout;
 import edu.uci.ics.jung.algorithms.layout.CircleLayout;
-import edu.uci.ics.jung.algorithms.layout.FRLayout;
 import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.algorithms.layout.StaticLayout;
 import edu.uci.ics.jung.algorithms.layout.util.Relaxer;
 import edu.uci.ics.jung.graph.Graph;
 import edu.uci.ics.jung.graph.SparseMultigraph;
@@ -29,6 +31,7 @@ import java.awt.geom.Point2D;
 import java.io.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class MatrixBuilder extends JApplet {
 	
@@ -45,6 +48,8 @@ public class MatrixBuilder extends JApplet {
 	HashMap<Number, Double> weights = new HashMap<>();
 	HashMap<Number, String> cnames = new HashMap<>();
 	int[][] matrixAll;
+	// the whole Girvan-Newman hierarchy, computed once in the background; null until it is ready
+	EdgeBetweennessClusterer.Dendrogram<Number,Number> dendrogram;
 	
 //	Factory<Graph<Number,Number>> graphFactory;
 	
@@ -188,9 +193,12 @@ private void setUpView(final MatrixAndNames man) throws IOException {
         }
         
 		//Create a simple layout frame
-        //specify the Fruchterman-Rheingold layout algorithm
+        //place the vertices with ForceAtlas2, which scales to large networks unlike Fruchterman-Rheingold;
+        //they start at random and move once the layout is computed in the background
+        final Dimension layoutSize = new Dimension(600, 600);
+        final CsrGraph layoutGraph = CsrGraph.fromAdjacency(names, matrix);
         final AggregateLayout<Number,Number> layout =
-        	new AggregateLayout<>(new FRLayout<>(graph));
+        	new AggregateLayout<>(new StaticLayout<>(graph, layoutSize));
 
 		vv = new VisualizationViewer<>(layout);
 		vv.setBackground( Color.white );
@@ -288,6 +296,14 @@ private void setUpView(final MatrixAndNames man) throws IOException {
 		eastControls.add(Box.createVerticalGlue());
 		eastControls.add(edgeBetweennessSlider);
 
+		//The slider waits for the hierarchy, which is computed once, off the event thread
+		final JProgressBar clusteringProgress = new JProgressBar();
+		clusteringProgress.setStringPainted(true);
+		clusteringProgress.setString("Clustering...");
+		eastControls.add(clusteringProgress);
+		edgeBetweennessSlider.setEnabled(false);
+		groupVertices.setEnabled(false);
+
 		final String COMMANDSTRING = "Edges removed for clusters: ";
 		final String eastSize = COMMANDSTRING + edgeBetweennessSlider.getValue();
 		
@@ -304,7 +320,59 @@ private void setUpView(final MatrixAndNames man) throws IOException {
 			}});
 
 
-		clusterAndRecolor(layout, 0, similarColors, groupVertices.isSelected(), weights, cnames);
+		new SwingWorker<EdgeBetweennessClusterer.Dendrogram<Number,Number>, int[]>() {
+			protected EdgeBetweennessClusterer.Dendrogram<Number,Number> doInBackground() {
+				return EdgeBetweennessClusterer.computeDendrogram(graph, weights, Integer.MAX_VALUE,
+						new EdgeBetweennessClusterer.ProgressListener() {
+					public void edgeRemoved(int removed, int total) {
+						publish(new int[]{removed, total});
+					}
+				});
+			}
+
+			protected void process(List<int[]> chunks) {
+				// the total leaves out self-loops, which are never removed
+				int[] progress = chunks.get(chunks.size() - 1);
+				clusteringProgress.setMaximum(Math.max(1, progress[1]));
+				clusteringProgress.setValue(progress[0]);
+				clusteringProgress.setString("Clustering: " + progress[0] + " of " + progress[1] + " edges");
+			}
+
+			protected void done() {
+				try {
+					dendrogram = get();
+				} catch (InterruptedException | ExecutionException e) {
+					throw new RuntimeException("Error clustering the graph", e);
+				}
+				edgeBetweennessSlider.setMaximum(dendrogram.getRemovalCount());
+				edgeBetweennessSlider.setEnabled(true);
+				groupVertices.setEnabled(true);
+				eastControls.remove(clusteringProgress);
+				eastControls.revalidate();
+				clusterAndRecolor(layout, edgeBetweennessSlider.getValue(), similarColors,
+						groupVertices.isSelected(), weights, cnames);
+				vv.repaint();
+			}
+		}.execute();
+
+		new SwingWorker<double[][], Void>() {
+			protected double[][] doInBackground() {
+				return new ForceAtlas2(layoutGraph).getPositions(layoutSize.getWidth(), layoutSize.getHeight(), 20);
+			}
+
+			protected void done() {
+				double[][] positions;
+				try {
+					positions = get();
+				} catch (InterruptedException | ExecutionException e) {
+					throw new RuntimeException("Error laying out the graph", e);
+				}
+				for (Number v : graph.getVertices()) {
+					layout.setLocation(v, new Point2D.Double(positions[v.intValue()][0], positions[v.intValue()][1]));
+				}
+				vv.repaint();
+			}
+		}.execute();
 
 		edgeBetweennessSlider.addChangeListener(new ChangeListener() {
 			public void stateChanged(ChangeEvent e) {
@@ -345,14 +413,16 @@ private void setUpView(final MatrixAndNames man) throws IOException {
     		//		if (numEdgesToRemove == 0) {
     		//			colorCluster( g.getVertices(), colors[0] );
     		//		} else {
+    		if (dendrogram == null) {
+    			return;
+    		}
     		
     		Graph<Number,Number> g = layout.getGraph();
             layout.removeAll();
 
-    		EdgeBetweennessClusterer<Number,Number> clusterer =
-    			new EdgeBetweennessClusterer<>(numEdgesToRemove);
-    		Set<Set<Number>> clusterSet = clusterer.transform(g, weights);
-    		List<Number> edges = clusterer.getEdgesRemoved();
+    		//Cut the cached hierarchy rather than clustering again
+    		Set<Set<Number>> clusterSet = dendrogram.getClusters(numEdgesToRemove);
+    		Set<Number> edges = new HashSet<>(dendrogram.getEdgesRemoved(numEdgesToRemove));
 
     		int i = 0;
     		//Set the colors of each node so that each cluster's vertices have the same color
@@ -0,0 +1,244 @@
+package edu.macalester.mscs.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A fast CSV reader shared by all of the character list and node data loaders.
+ *
+ * The whole file is decoded once into a single buffer, and each field of the current
+ * record is returned as a CharSequence view over that buffer, so reading a record does
+ * not copy any characters. Fields may be quoted, in which case they can contain commas
+ * and line breaks, and a doubled quote stands for a literal quote. Only those fields that
+ * contain doubled quotes are copied, in order to unescape them.
+ *
+ * Records are separated by '\n', '\r' or "\r\n", since some of the older character lists
+ * were saved with classic Mac line endings. A blank line is a record with one empty field.
+ * Each record is trimmed of leading and trailing whitespace outside of quotes, as FileUtils.readFile
+ * trims lines, so a trailing space or tab never ends up in the last field.
+ *
+ * Typical usage:
+ * <pre>
+ *     CsvReader reader = CsvReader.open(fileName);
+ *     while (reader.next()) {
+ *         String id = reader.getString(0);
+ *         ...
+ *     }
+ * </pre>
+ */
+public class CsvReader {
+
+    private final CharSequence text;
+    private int position = 0;
+
+    // the current record
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    private int size = 0;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private String[] unescaped = new String[16];
+
+    public CsvReader(CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * Opens a reader over the entire file, which is decoded as FileUtils.mapText does
+     * @param file
+     * @return
+     */
+    public static CsvReader open(String file) {
+        return new CsvReader(FileUtils.mapText(file));
+    }
+
+    /**
+     * Reads every record of the file into an array of strings, including the header
+     * @param file
+     * @return
+     */
+    public static List<String[]> readAll(String file) {
+        CsvReader reader = open(file);
+        List<String[]> records = new ArrayList<>();
+        while (reader.next()) {
+            records.add(reader.toArray());
+        }
+        return records;
+    }
+
+    /**
+     * Advances to the next record
+     * @return false if there are no more records
+     */
+    public boolean next() {
+        int length = text.length();
+        if (position >= length) {
+            size = 0;
+            return false;
+        }
+        size = 0;
+        while (position < length && isBlank(text.charAt(position))) {
+            position++;
+        }
+        lineStart = position;
+        while (true) {
+            boolean quoted = position < length && text.charAt(position) == '"';
+            if (quoted) {
+                position++;
+                int start = position;
+                boolean escaped = false;
+                while (position < length) {
+                    if (text.charAt(position) == '"') {
+                        if (position + 1 < length && text.charAt(position + 1) == '"') {
+                            escaped = true;
+                            position += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    position++;
+                }
+                addField(start, position, escaped);
+                // skip the closing quote and anything stray after it
+                while (position < length && !isSeparator(text.charAt(position))) {
+                    position++;
+                }
+            } else {
+                int start = position;
+                while (position < length && !isSeparator(text.charAt(position))) {
+                    position++;
+                }
+                addField(start, position, false);
+            }
+
+            if (position < length && text.charAt(position) == ',') {
+                position++;
+            } else {
+                lineEnd = position;
+                while (lineEnd > lineStart && isBlank(text.charAt(lineEnd - 1))) {
+                    lineEnd--;
+                }
+                if (!quoted) {
+                    ends[size - 1] = Math.max(starts[size - 1], Math.min(ends[size - 1], lineEnd));
+                }
+                if (position < length && text.charAt(position) == '\r') {
+                    position++;
+                }
+                if (position < length && text.charAt(position) == '\n') {
+                    position++;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of fields in the current record
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a view of the field at the index of the current record.
+     * The view is only guaranteed to be valid until the next call to next().
+     * @param index
+     * @return
+     */
+    public CharSequence get(int index) {
+        checkIndex(index);
+        if (unescaped[index] != null) {
+            return unescaped[index];
+        }
+        return text.subSequence(starts[index], ends[index]);
+    }
+
+    /**
+     * Returns a copy of the field at the index of the current record
+     * @param index
+     * @return
+     */
+    public String getString(int index) {
+        return get(index).toString();
+    }
+
+    /**
+     * Returns a copy of the field at the index, or the default value if the
+     * current record does not have that many fields
+     * @param index
+     * @return
+     */
+    public String getString(int index, String defaultValue) {
+        return index < size ? getString(index) : defaultValue;
+    }
+
+    /**
+     * Parses the field at the index of the current record as a double
+     * @param index
+     * @return
+     */
+    public double getDouble(int index) {
+        return Double.parseDouble(getString(index).trim());
+    }
+
+    /**
+     * Returns true if the field at the index of the current record has no characters
+     * @param index
+     * @return
+     */
+    public boolean isEmpty(int index) {
+        checkIndex(index);
+        return ends[index] == starts[index];
+    }
+
+    /**
+     * Returns a view of the raw text of the current record, without its line break
+     * @return
+     */
+    public CharSequence getLine() {
+        return text.subSequence(lineStart, lineEnd);
+    }
+
+    /**
+     * Copies the fields of the current record into a new array
+     * @return
+     */
+    public String[] toArray() {
+        String[] fields = new String[size];
+        for (int i = 0; i < size; i++) {
+            fields[i] = getString(i);
+        }
+        return fields;
+    }
+
+    private void addField(int start, int end, boolean escaped) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            unescaped = Arrays.copyOf(unescaped, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        unescaped[size] = escaped ? text.subSequence(start, end).toString().replace("\"\"", "\"") : null;
+        size++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Field " + index + " of a record with " + size + " fields");
+        }
+    }
+
+    /**
+     * Whitespace other than a line break, which trim() would remove
+     */
+    private static boolean isBlank(char c) {
+        return c <= ' ' && c != '\n' && c != '\r';
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ',' || c == '\n' || c == '\r';
+    }
+}
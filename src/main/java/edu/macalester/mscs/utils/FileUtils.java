@@ -1,40 +1,125 @@
 package edu.macalester.mscs.utils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
+ * All files are written as UTF-8, regardless of the platform charset, and read as UTF-8
+ * if they are valid UTF-8. A file that is not, such as the older data files with the odd
+ * Windows-1252 quote, is read as Latin-1 instead, so that every byte is kept as a character.
+ * Lines are decoded in the same pass that reads them, switching to Latin-1 at the first byte
+ * that is not UTF-8, while mapText and MappedText decide for the whole file. The two agree
+ * whenever the text before that byte is ASCII, as it is in the older data files.
+ *
  * @author Ari Weiland
  */
 public class FileUtils {
 
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+    public static final Charset FALLBACK_CHARSET = StandardCharsets.ISO_8859_1;
+
+    /**
+     * Buffer size for reading and writing, large enough that a book is only a few hundred system calls
+     */
+    public static final int BUFFER_SIZE = 1 << 16;
+
     public static List<String> readFile(String file) {
         List<String> lines = new ArrayList<>();
-        String line = null;
-        BufferedReader fileReader = null;
+        LineIterator iterator = iterateLines(file);
         try {
-            fileReader = new BufferedReader(new FileReader(file));
-            while ((line = fileReader.readLine()) != null) {
-                lines.add(line.trim());
+            while (iterator.hasNext()) {
+                lines.add(iterator.next().trim());
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Error at \'" + line + "\'", e);
         } finally {
-            if (fileReader != null) {
-                try {
-                    fileReader.close();
-                } catch (IOException ignored) {
-                }
-            }
+            iterator.close();
         }
         return lines;
     }
 
+    /**
+     * Returns an iterator over the lines of the file, which are read lazily and are not trimmed.
+     * The iterator closes the file once it is exhausted, but should be closed explicitly
+     * if iteration stops early.
+     * @param file
+     * @return
+     */
+    public static LineIterator iterateLines(String file) {
+        try {
+            InputStream in = Files.newInputStream(Paths.get(file));
+            return new LineIterator(new BufferedReader(new FallbackReader(in), BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening \'" + file + "\'", e);
+        }
+    }
+
+    /**
+     * Reads the entire file through a memory-mapped buffer and decodes it, as UTF-8 or else Latin-1.
+     * The raw bytes are not copied onto the heap, but the decoded characters are, in one buffer.
+     * @param file
+     * @return
+     */
+    public static CharBuffer mapText(String file) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return newDecoder().decode(bytes.duplicate());
+            } catch (CharacterCodingException e) {
+                return FALLBACK_CHARSET.decode(bytes);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading \'" + file + "\'", e);
+        }
+    }
+
+    /**
+     * Opens a buffered writer for the file, for callers that want to stream
+     * their output rather than building a list of lines first.
+     * The output goes to a temporary file in the same folder, which only replaces
+     * the file when the writer is committed. Closing the writer without committing,
+     * as from a finally block after an exception, discards the output and leaves
+     * the file as it was, so readers never see a partial file.
+     * @param file
+     * @return
+     */
+    public static AtomicWriter openWriter(String file) {
+        try {
+            return new AtomicWriter(Paths.get(file).toAbsolutePath());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Opens a buffered output stream for binary files, which replaces the file
+     * only when it is committed, in the same way as openWriter
+     * @param file
+     * @return
+     */
+    public static AtomicOutputStream openOutputStream(String file) {
+        try {
+            return new AtomicOutputStream(Paths.get(file).toAbsolutePath());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static void writeFile(List<String> lines, String file) {
-        BufferedWriter writer = null;
+        AtomicWriter writer = null;
         try {
-            writer = new BufferedWriter(new FileWriter(file));
+            writer = openWriter(file);
             for (String line : lines) {
                 if (line == null) {
                     System.out.println("FileUtils.writeFile() is skipping null line");
@@ -44,15 +129,246 @@ public class FileUtils {
                 }
 
             }
+            writer.commit();
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
             if (writer != null) {
                 try {
                     writer.close();
-                } catch (IOException ignored) {}
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Returns a UTF-8 decoder that reports malformed input, so that the caller can fall back to Latin-1
+     * @return
+     */
+    static CharsetDecoder newDecoder() {
+        return CHARSET.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    /**
+     * Decodes a stream as UTF-8 up to the first malformed sequence, and as Latin-1 from there on
+     */
+    private static class FallbackReader extends Reader {
+
+        private final InputStream in;
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        private CharsetDecoder decoder = newDecoder();
+        private boolean endOfInput = false;
+        private boolean flushed = false;
+
+        private FallbackReader(InputStream in) {
+            this.in = in;
+            bytes.flip();
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            CharBuffer out = CharBuffer.wrap(buffer, offset, length);
+            while (out.position() == offset && !flushed) {
+                CoderResult result = decoder.decode(bytes, out, endOfInput);
+                if (result.isError()) {
+                    // the offending bytes are still in the buffer, so Latin-1 picks up from them
+                    decoder = FALLBACK_CHARSET.newDecoder();
+                } else if (result.isUnderflow()) {
+                    if (endOfInput) {
+                        decoder.flush(out);
+                        flushed = true;
+                    } else {
+                        fill();
+                    }
+                }
+            }
+            int count = out.position() - offset;
+            return count == 0 ? -1 : count;
+        }
+
+        private void fill() throws IOException {
+            bytes.compact();
+            int count = in.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            if (count < 0) {
+                endOfInput = true;
+            } else {
+                bytes.position(bytes.position() + count);
+            }
+            bytes.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * A lazy iterator over the lines of a file
+     */
+    public static class LineIterator implements Iterator<String>, Iterable<String>, Closeable {
+
+        private final BufferedReader reader;
+        private String next;
+        private boolean closed = false;
+
+        private LineIterator(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !closed) {
+                try {
+                    next = reader.readLine();
+                } catch (IOException e) {
+                    close();
+                    throw new RuntimeException(e);
+                }
+                if (next == null) {
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String line = next;
+            next = null;
+            return line;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes to a temporary file, which is moved over the target on commit
+     * and deleted if the writer is closed without committing
+     */
+    public static class AtomicWriter extends BufferedWriter {
+
+        private final AtomicOutputStream out;
+
+        private AtomicWriter(Path target) throws IOException {
+            this(new AtomicOutputStream(target));
+        }
+
+        private AtomicWriter(AtomicOutputStream out) {
+            super(new OutputStreamWriter(out, CHARSET), BUFFER_SIZE);
+            this.out = out;
+        }
+
+        /**
+         * Flushes the output and moves it over the target, closing the writer
+         * @throws IOException
+         */
+        public void commit() throws IOException {
+            flush();
+            out.commit();
+        }
+
+        /**
+         * Discards the output, unless it has been committed
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                out.close();
             }
         }
+    }
 
+    /**
+     * Writes to a temporary file, which is moved over the target on commit
+     * and deleted if the stream is closed without committing
+     */
+    public static class AtomicOutputStream extends BufferedOutputStream {
+
+        private final Path target;
+        private final Path temp;
+        private boolean closed = false;
+
+        private AtomicOutputStream(Path target) throws IOException {
+            this(target, target.resolveSibling("." + target.getFileName() + "."
+                    + Thread.currentThread().getId() + "-" + System.nanoTime() + ".tmp"));
+        }
+
+        private AtomicOutputStream(Path target, Path temp) throws IOException {
+            super(Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW), BUFFER_SIZE);
+            this.target = target;
+            this.temp = temp;
+        }
+
+        /**
+         * Flushes the output and moves it over the target, closing the stream
+         * @throws IOException
+         */
+        public synchronized void commit() throws IOException {
+            if (closed) {
+                throw new IllegalStateException("The output for '" + target + "' is already closed");
+            }
+            closed = true;
+            try {
+                super.close();
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        /**
+         * Discards the output, unless it has been committed
+         * @throws IOException
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
     }
 }
@@ -1,14 +1,16 @@
 package edu.macalester.mscs.utils;
 
+import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * @author Ari Weiland
  */
-public class Logger {
+public class Logger implements Closeable {
 
     private final List<String> log;
+    private final Writer out;
     private boolean verbose;
 
     public Logger() {
@@ -23,9 +25,40 @@ public class Logger {
 
     public Logger(List<String> log, boolean verbose) {
         this.log = log;
+        this.out = null;
         this.verbose = verbose;
     }
 
+    /**
+     * Creates a logger that streams every line straight to the writer instead of
+     * holding it in memory. The writer is closed by close().
+     * @param out
+     */
+    public Logger(Writer out) {
+        this.log = null;
+        this.out = out;
+        this.verbose = false;
+    }
+
+    /**
+     * Creates a streaming logger that writes directly to the specified file.
+     * The logger must be committed once all lines have been logged, and closed
+     * in any case; closing it without committing leaves the file as it was.
+     * @param file
+     * @return
+     */
+    public static Logger toFile(String file) {
+        return new Logger(FileUtils.openWriter(file));
+    }
+
+    /**
+     * Returns true if this logger streams its lines rather than buffering them
+     * @return
+     */
+    public boolean isStreaming() {
+        return out != null;
+    }
+
     public boolean isVerbose() {
         return verbose;
     }
@@ -50,12 +83,12 @@ public class Logger {
      */
     public void log(Object o) {
         if (o == null) {
-            log.add("");
+            add("");
             if (verbose) { System.out.println(); }
         } else if (o instanceof Logger) {
             append((Logger) o);
         } else {
-            log.add(o.toString());
+            add(o.toString());
             if (verbose) { System.out.println(o.toString()); }
         }
     }
@@ -76,13 +109,25 @@ public class Logger {
      * @param logger
      */
     public void append(Logger logger) {
-        log.addAll(logger.log);
+        if (logger.isStreaming()) {
+            throw new IllegalStateException("Cannot append a streaming logger");
+        }
+        if (isStreaming()) {
+            for (String line : logger.log) {
+                add(line);
+            }
+        } else {
+            log.addAll(logger.log);
+        }
     }
 
     /**
      * Clears the log
      */
     public void clear() {
+        if (isStreaming()) {
+            throw new IllegalStateException("Cannot clear a streaming logger");
+        }
         log.clear();
     }
 
@@ -92,6 +137,56 @@ public class Logger {
      * @param file
      */
     public void writeLog(String file) {
+        if (isStreaming()) {
+            throw new IllegalStateException("A streaming logger has already written its lines");
+        }
         FileUtils.writeFile(log, file);
     }
+
+    /**
+     * Flushes the lines of a streaming logger and closes its writer. For a logger
+     * from toFile, this is what replaces the file. Does nothing for a buffered logger.
+     */
+    public void commit() {
+        if (isStreaming()) {
+            try {
+                if (out instanceof FileUtils.AtomicWriter) {
+                    ((FileUtils.AtomicWriter) out).commit();
+                } else {
+                    out.close();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Closes the underlying writer of a streaming logger. For a logger from toFile
+     * that has not been committed, this discards the lines written so far.
+     * Does nothing for a buffered logger.
+     */
+    @Override
+    public void close() {
+        if (isStreaming()) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void add(String line) {
+        if (isStreaming()) {
+            try {
+                out.write(line);
+                out.write('\n');
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            log.add(line);
+        }
+    }
 }
@@ -0,0 +1,187 @@
+package edu.macalester.mscs.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only CharSequence over a text file that keeps the text off the Java heap,
+ * so that building a matrix from a very large corpus does not need heap proportional to its size.
+ *
+ * The file is memory-mapped. If it is pure ASCII, or not valid UTF-8 and so read as Latin-1
+ * as FileUtils does, the mapped bytes are used directly, one byte per character, without a copy.
+ * Otherwise it is decoded as UTF-8 into a direct buffer, which is a copy, but not on the heap.
+ */
+public class MappedText implements CharSequence {
+
+    private final ByteBuffer bytes; // one byte per character, or null
+    private final CharBuffer chars; // decoded characters, or null
+    private final int offset;
+    private final int length;
+
+    private MappedText(ByteBuffer bytes, CharBuffer chars, int offset, int length) {
+        this.bytes = bytes;
+        this.chars = chars;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns a view of the whole file, exactly as it is
+     * @param file
+     * @return
+     */
+    public static MappedText open(String file) {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading \'" + file + "\'", e);
+        }
+        if (isAscii(mapped)) {
+            return new MappedText(mapped, null, 0, mapped.limit());
+        }
+        CharBuffer decoded = decodeUtf8(mapped);
+        if (decoded == null) { // not UTF-8, so fall back to Latin-1
+            return new MappedText(mapped, null, 0, mapped.limit());
+        }
+        return new MappedText(null, decoded, 0, decoded.limit());
+    }
+
+    /**
+     * Returns a view of the file with every line trimmed and the lines joined by single spaces,
+     * and with the result trimmed as well. This is how the books are fed to the matrix.
+     * The joined text is written once into a direct buffer, rather than into a String.
+     * @param file
+     * @return
+     */
+    public static MappedText openJoinedLines(String file) {
+        MappedText raw = open(file);
+        int length = raw.length();
+        // trimming never adds characters, but the last line gets a space even without a line break
+        ByteBuffer outBytes = raw.bytes == null ? null : ByteBuffer.allocateDirect(length + 1);
+        CharBuffer outChars = raw.bytes == null ? ByteBuffer.allocateDirect((length + 1) * 2).asCharBuffer() : null;
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            char c = (i < length) ? raw.charAt(i) : '\n';
+            if (c == '\n' || c == '\r') {
+                if (i == length && start == length) {
+                    break; // no empty line after a trailing line break
+                }
+                int lineStart = start;
+                int lineEnd = i;
+                while (lineStart < lineEnd && raw.charAt(lineStart) <= ' ') {
+                    lineStart++;
+                }
+                while (lineEnd > lineStart && raw.charAt(lineEnd - 1) <= ' ') {
+                    lineEnd--;
+                }
+                for (int j = lineStart; j < lineEnd; j++) {
+                    put(outBytes, outChars, raw.charAt(j));
+                }
+                put(outBytes, outChars, ' ');
+                if (c == '\r' && i + 1 < length && raw.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        MappedText joined = outBytes != null
+                ? new MappedText(outBytes, null, 0, outBytes.position())
+                : new MappedText(null, outChars, 0, outChars.position());
+        return joined.trim();
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " of text with length " + length);
+        }
+        if (bytes != null) {
+            return (char) (bytes.get(offset + index) & 0xff);
+        }
+        return chars.get(offset + index);
+    }
+
+    @Override
+    public MappedText subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") of text with length " + length);
+        }
+        return new MappedText(bytes, chars, offset + start, end - start);
+    }
+
+    /**
+     * Returns a view without leading and trailing whitespace, as String.trim() would
+     * @return
+     */
+    public MappedText trim() {
+        int start = 0;
+        int end = length;
+        while (start < end && charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(charAt(i));
+        }
+        return sb.toString();
+    }
+
+    private static void put(ByteBuffer outBytes, CharBuffer outChars, char c) {
+        if (outBytes != null) {
+            outBytes.put((byte) c);
+        } else {
+            outChars.put(c);
+        }
+    }
+
+    private static boolean isAscii(ByteBuffer buffer) {
+        for (int i = 0; i < buffer.limit(); i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the bytes into a direct buffer, or returns null if they are not valid UTF-8
+     * @param buffer
+     * @return
+     */
+    private static CharBuffer decodeUtf8(ByteBuffer buffer) {
+        CharsetDecoder decoder = FileUtils.newDecoder();
+        // UTF-8 never has more characters than bytes
+        CharBuffer out = ByteBuffer.allocateDirect(Math.max(buffer.limit(), 1) * 2).asCharBuffer();
+        ByteBuffer in = buffer.duplicate();
+        CoderResult result = decoder.decode(in, out, true);
+        if (result.isError()) {
+            return null;
+        }
+        result = decoder.flush(out);
+        if (result.isError()) {
+            return null;
+        }
+        out.flip();
+        return out;
+    }
+}